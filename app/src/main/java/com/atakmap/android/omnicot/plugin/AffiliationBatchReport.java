@@ -0,0 +1,118 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-item outcome of a batch affiliation update
+ */
+public class AffiliationBatchReport {
+
+    public enum Status {
+        /** Event queued for sending, item updated and persisted */
+        UPDATED,
+        /** Item already had the requested affiliation, nothing sent */
+        UNCHANGED,
+        /** Item was null or had an invalid COT type */
+        INVALID,
+        /** No COT event could be created for the item */
+        BUILD_FAILED,
+        /** The COT event was rejected by the outbound scheduler */
+        DISPATCH_FAILED
+    }
+
+    /**
+     * Outcome for a single item
+     */
+    public static class ItemResult {
+        private final String uid;
+        private final Status status;
+        private final String message;
+
+        ItemResult(String uid, Status status, String message) {
+            this.uid = uid;
+            this.status = status;
+            this.message = message;
+        }
+
+        /**
+         * UID of the item, null if the item itself was null
+         */
+        public String getUid() {
+            return uid;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Reason for a non-successful status, may be null
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.UPDATED || status == Status.UNCHANGED;
+        }
+    }
+
+    private final AffiliationUpdater.Affiliation affiliation;
+    private final List<ItemResult> results = new ArrayList<>();
+    private final int[] statusCounts = new int[Status.values().length];
+    private final long startNanos = System.nanoTime();
+    private long elapsedNanos;
+
+    AffiliationBatchReport(AffiliationUpdater.Affiliation affiliation) {
+        this.affiliation = affiliation;
+    }
+
+    void add(String uid, Status status, String message) {
+        results.add(new ItemResult(uid, status, message));
+        statusCounts[status.ordinal()]++;
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public AffiliationUpdater.Affiliation getAffiliation() {
+        return affiliation;
+    }
+
+    public List<ItemResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Number of items that ended with the given status
+     */
+    public int getCount(Status status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * Number of items that did not end up with the requested affiliation
+     */
+    public int getFailureCount() {
+        return results.size() - getCount(Status.UPDATED) - getCount(Status.UNCHANGED);
+    }
+
+    /**
+     * Wall time of the whole batch
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: %d items, %d updated, %d unchanged, %d failed in %.2f ms",
+                affiliation.label, results.size(), getCount(Status.UPDATED),
+                getCount(Status.UNCHANGED), getFailureCount(), elapsedNanos / 1e6);
+    }
+}
@@ -0,0 +1,224 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.atakmap.android.maps.MapItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds outbound affiliation broadcasts for a short window per UID so that
+ * several quick changes to the same marker go out as one message carrying
+ * the final state. A marker that ends the window with the type it started
+ * with is not broadcast at all. Windows close on a background thread, so
+ * building the outbound event never runs on the UI thread.
+ */
+public class AffiliationBroadcastQueue {
+    private static final String TAG = "AffiliationBroadcastQueue";
+
+    /** Default time a change waits for further changes to the same marker */
+    public static final long DEFAULT_WINDOW_MS = 1000;
+
+    // A marker that keeps changing is still sent after this many windows
+    private static final int MAX_WINDOWS = 3;
+
+    /**
+     * Sends the current state of a marker
+     */
+    public interface Sender {
+        void send(MapItem mapItem);
+    }
+
+    /**
+     * A marker waiting for its window to close
+     */
+    private class PendingBroadcast implements Runnable {
+        final String uid;
+        final String originalType;
+        final long firstQueuedAt;
+        MapItem mapItem;
+        ScheduledFuture<?> future;
+
+        PendingBroadcast(String uid, MapItem mapItem, String originalType, long now) {
+            this.uid = uid;
+            this.mapItem = mapItem;
+            this.originalType = originalType;
+            this.firstQueuedAt = now;
+        }
+
+        @Override
+        public void run() {
+            synchronized (AffiliationBroadcastQueue.this) {
+                if (pending.get(uid) != this) return;
+                pending.remove(uid);
+            }
+            send(this);
+        }
+    }
+
+    private final Sender sender;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, PendingBroadcast> pending = new HashMap<>();
+    private volatile long windowMs = DEFAULT_WINDOW_MS;
+
+    private long queuedCount;
+    private long coalescedCount;
+    private long sentCount;
+    private long suppressedCount;
+
+    public AffiliationBroadcastQueue(Sender sender) {
+        this.sender = sender;
+
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "OmniCOT-broadcast");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // Cancelled windows are dropped from the queue instead of waiting it out
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Set how long a change waits for further changes to the same marker.
+     * A window of 0 sends every change immediately.
+     */
+    public void setWindowMs(long windowMs) {
+        this.windowMs = Math.max(0, windowMs);
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Queue a broadcast of a marker's state. Must be called after the marker
+     * has been updated locally.
+     * @param mapItem The changed marker
+     * @param previousType The marker's type before this change
+     */
+    public void enqueue(MapItem mapItem, String previousType) {
+        long window = windowMs;
+        String uid = mapItem.getUID();
+        long now = SystemClock.elapsedRealtime();
+        PendingBroadcast broadcast;
+
+        synchronized (this) {
+            queuedCount++;
+            broadcast = pending.get(uid);
+            if (broadcast != null) {
+                // Restart the window, but never beyond the maximum hold time
+                coalescedCount++;
+                broadcast.mapItem = mapItem;
+                broadcast.future.cancel(false);
+                long maxDelay = broadcast.firstQueuedAt + window * MAX_WINDOWS - now;
+                broadcast.future = executor.schedule(broadcast,
+                        Math.max(0, Math.min(window, maxDelay)), TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            broadcast = new PendingBroadcast(uid, mapItem, previousType, now);
+            if (window > 0) {
+                pending.put(uid, broadcast);
+                broadcast.future = executor.schedule(broadcast, window, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        send(broadcast);
+    }
+
+    /**
+     * Drop a pending broadcast, for example because the marker's state was
+     * already sent another way
+     * @return true if a broadcast was pending
+     */
+    public synchronized boolean cancel(String uid) {
+        PendingBroadcast broadcast = pending.remove(uid);
+        if (broadcast == null) return false;
+
+        broadcast.future.cancel(false);
+        return true;
+    }
+
+    /**
+     * Send everything that is pending right away
+     */
+    public void flush() {
+        List<PendingBroadcast> broadcasts;
+        synchronized (this) {
+            broadcasts = new ArrayList<>(pending.values());
+            pending.clear();
+            for (PendingBroadcast broadcast : broadcasts) {
+                broadcast.future.cancel(false);
+            }
+        }
+
+        for (PendingBroadcast broadcast : broadcasts) {
+            send(broadcast);
+        }
+    }
+
+    private void send(PendingBroadcast broadcast) {
+        MapItem mapItem = broadcast.mapItem;
+        String type = mapItem.getType();
+        if (type != null && type.equals(broadcast.originalType)) {
+            // Changed and changed back within the window, receivers are up to date
+            synchronized (this) {
+                suppressedCount++;
+            }
+            Log.d(TAG, "Suppressed no-op broadcast for " + broadcast.uid);
+            return;
+        }
+
+        try {
+            sender.send(mapItem);
+            synchronized (this) {
+                sentCount++;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending broadcast for " + broadcast.uid, e);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Number of changes handed to the queue
+     */
+    public synchronized long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Number of changes merged into an already pending broadcast
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Number of broadcasts dropped because the marker ended where it started
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+}
@@ -0,0 +1,122 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * One affiliation change as carried by the {@code <__omnicot>} detail
+ * element. Built before the marker itself changes, so an event describing
+ * a change can be created and sent before the change is applied locally.
+ */
+public final class AffiliationChange {
+
+    // Previous affiliation recorded when the old type cannot be parsed
+    private static final char UNKNOWN = 'u';
+
+    private final char affiliation;
+    private final char previous;
+    private final String operator;
+    private final long timeMillis;
+    private final String history;
+
+    AffiliationChange(char affiliation, char previous, String operator,
+                      long timeMillis, String history) {
+        this.affiliation = affiliation;
+        this.previous = previous;
+        this.operator = operator != null ? operator : "";
+        this.timeMillis = timeMillis;
+        this.history = history;
+    }
+
+    /**
+     * Describe a marker changing from its current type to a new one
+     * @param last The marker's last recorded change, or null if it has none
+     * @param currentType The marker's type before the change
+     * @param newType The marker's type after the change
+     * @param operator Callsign of the operator making the change
+     * @param now Time of the change in epoch milliseconds
+     * @param historyLimit How many earlier changes to keep, 0 to leave the history as it is
+     * @return The change, or null if the new type is invalid
+     */
+    static AffiliationChange next(AffiliationChange last, String currentType, String newType,
+                                  String operator, long now, int historyLimit) {
+        CotTypeCodec.Descriptor next = CotTypeCodec.describe(newType);
+        if (!next.isValid()) return null;
+
+        CotTypeCodec.Descriptor current = CotTypeCodec.describe(currentType);
+        char previous = current.isValid() ? current.getAffiliation() : UNKNOWN;
+
+        // The change being replaced moves into the history
+        String history = last != null ? last.history : null;
+        if (historyLimit > 0 && last != null) {
+            history = appendHistory(history, last.affiliation, last.timeMillis / 1000,
+                    historyLimit);
+        }
+        return new AffiliationChange(next.getAffiliation(), previous, operator, now, history);
+    }
+
+    public char getAffiliation() {
+        return affiliation;
+    }
+
+    public char getPrevious() {
+        return previous;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Earlier changes as affiliation code plus epoch seconds, newest first,
+     * or null if none were kept
+     */
+    public String getHistory() {
+        return history;
+    }
+
+    /**
+     * Attributes of the detail element in the order they are written
+     * @param includeHistory Whether to add the history, if there is one
+     */
+    Map<String, String> toAttributes(boolean includeHistory) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("aff", String.valueOf(affiliation));
+        attributes.put("prev", String.valueOf(previous));
+        attributes.put("by", operator);
+        attributes.put("time", formatTime(timeMillis));
+        if (includeHistory && history != null && !history.isEmpty()) {
+            attributes.put("hist", history);
+        }
+        return attributes;
+    }
+
+    /**
+     * Add an entry to the front of a history string, keeping at most limit entries
+     */
+    static String appendHistory(String history, char affiliation, long epochSeconds, int limit) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(affiliation).append(epochSeconds);
+        if (history != null && !history.isEmpty()) {
+            String[] entries = history.split(" ");
+            for (int i = 0; i < entries.length && i < limit - 1; i++) {
+                sb.append(' ').append(entries[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String formatTime(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+}
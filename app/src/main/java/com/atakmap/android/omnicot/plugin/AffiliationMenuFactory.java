@@ -17,6 +17,8 @@ import com.atakmap.android.menu.PluginMenuParser;
 import com.atakmap.android.widgets.WidgetIcon;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import gov.tak.api.widgets.IMapMenuButtonWidget;
 
@@ -28,42 +30,74 @@ public class AffiliationMenuFactory implements MapMenuFactory {
 
     private final Context atakContext;
     private final Context pluginContext;
-    private final MenuResourceFactory resourceFactory;
+    private MenuResourceFactory resourceFactory;
+
+    // Drawables of the affiliation button and its options
+    private static final int[] ICONS = {
+            R.drawable.icon_affiliation, R.drawable.icon_aff_unknown,
+            R.drawable.icon_aff_neutral, R.drawable.icon_aff_friendly,
+            R.drawable.icon_aff_hostile
+    };
+
+    // Icons by drawable ID, built once and shared by every menu
+    private final Map<Integer, WidgetIcon> icons = new HashMap<>();
 
     public AffiliationMenuFactory(Context pluginContext) {
-        final MapView mapView = MapView.getMapView();
-        this.atakContext = mapView.getContext();
+        this.atakContext = MapView.getMapView().getContext();
         this.pluginContext = pluginContext;
+    }
 
-        // Set up resource factory for default menu creation
-        final MapAssets mapAssets = new MapAssets(atakContext);
-        final MenuMapAdapter adapter = new MenuMapAdapter();
-        try {
-            adapter.loadMenuFilters(mapAssets, "filters/menu_filters.xml");
-        } catch (IOException e) {
-            Log.w(TAG, "Could not load menu filters", e);
+    /**
+     * Get the resource factory for default menu creation, building it on
+     * first use. Loading the menu filters is too slow for plugin startup.
+     */
+    private synchronized MenuResourceFactory getResourceFactory() {
+        if (resourceFactory == null) {
+            final MapView mapView = MapView.getMapView();
+            final MapAssets mapAssets = new MapAssets(atakContext);
+            final MenuMapAdapter adapter = new MenuMapAdapter();
+            try {
+                adapter.loadMenuFilters(mapAssets, "filters/menu_filters.xml");
+            } catch (IOException e) {
+                Log.w(TAG, "Could not load menu filters", e);
+            }
+
+            resourceFactory = new MenuResourceFactory(mapView,
+                mapView.getMapData(), mapAssets, adapter);
         }
+        return resourceFactory;
+    }
 
-        this.resourceFactory = new MenuResourceFactory(mapView,
-            mapView.getMapData(), mapAssets, adapter);
+    /**
+     * Build the default menu resources ahead of the first menu open
+     */
+    public void prepareResources() {
+        getResourceFactory();
     }
 
     @Override
     public MapMenuWidget create(MapItem item) {
         if (item == null) return null;
 
+        long start = System.nanoTime();
+        try {
+            return createMenu(item);
+        } finally {
+            PluginMetrics.MENU_BUILD.recordSince(start);
+        }
+    }
+
+    private MapMenuWidget createMenu(MapItem item) {
         // Get the default menu from ATAK
-        final MapMenuWidget menuWidget = resourceFactory.create(item);
+        final MapMenuWidget menuWidget = getResourceFactory().create(item);
         if (menuWidget == null) return null;
 
         try {
-            // Create our affiliation button
-            MapMenuButtonWidget affiliationButton = createAffiliationButton(item);
+            // Each menu gets its own widgets bound to its item, so an older
+            // menu still open can never act on a newer menu's item
+            menuWidget.addWidget(createAffiliationButton(item));
 
-            // Add to the main menu
-            menuWidget.addWidget(affiliationButton);
-
-            Log.d(TAG, "Added affiliation button to menu for " + item.getUID());
+            Trace.record(Trace.DEBUG, Trace.MENU_CREATED, item.getUID().hashCode() & 0xffffffffL);
             return menuWidget;
 
         } catch (Exception e) {
@@ -73,17 +107,33 @@ public class AffiliationMenuFactory implements MapMenuFactory {
     }
 
     /**
-     * Create the main affiliation button with submenu
+     * Build the icons ahead of the first menu open
+     */
+    public void prewarm() {
+        long start = System.nanoTime();
+        try {
+            for (int drawableResId : ICONS) {
+                getWidgetIcon(drawableResId);
+            }
+            Log.d(TAG, "Menu icons pre-warmed in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Error pre-warming menu icons", e);
+        }
+    }
+
+    /**
+     * Create the main affiliation button with submenu for an item
      */
-    private MapMenuButtonWidget createAffiliationButton(MapItem item) {
+    private MapMenuButtonWidget createAffiliationButton(final MapItem target) {
         MapMenuButtonWidget button = new MapMenuButtonWidget(atakContext);
 
         // Set icon
-        button.setIcon(createWidgetIconFromDrawable(R.drawable.icon_affiliation));
+        button.setIcon(getWidgetIcon(R.drawable.icon_affiliation));
 
         // Create submenu with 4 affiliation options
         float radius = 100f; // Default radius, will be adjusted
-        MapMenuWidget submenu = createAffiliationSubmenu(item, radius);
+        MapMenuWidget submenu = createAffiliationSubmenu(radius, target);
 
         // Set submenu
         button.setSubmenu(submenu);
@@ -99,7 +149,9 @@ public class AffiliationMenuFactory implements MapMenuFactory {
             public void performAction(Object o) {
                 // The submenu will handle the actual selections
                 // This is called if button is clicked without submenu showing
-                Log.d(TAG, "Affiliation button clicked for " + item.getUID());
+                MapItem item = getTarget(o, target);
+                Log.d(TAG, "Affiliation button clicked for "
+                        + (item != null ? item.getUID() : null));
             }
         });
 
@@ -109,18 +161,18 @@ public class AffiliationMenuFactory implements MapMenuFactory {
     /**
      * Create the submenu with 4 affiliation options
      */
-    private MapMenuWidget createAffiliationSubmenu(MapItem item, float radius) {
+    private MapMenuWidget createAffiliationSubmenu(float radius, MapItem target) {
         MapMenuWidget submenu = new MapMenuWidget();
 
         // Create buttons for each affiliation
         submenu.addWidget(createAffiliationOptionButton(
-            item, AffiliationUpdater.Affiliation.UNKNOWN, R.drawable.icon_aff_unknown, radius));
+            AffiliationUpdater.Affiliation.UNKNOWN, R.drawable.icon_aff_unknown, radius, target));
         submenu.addWidget(createAffiliationOptionButton(
-            item, AffiliationUpdater.Affiliation.NEUTRAL, R.drawable.icon_aff_neutral, radius));
+            AffiliationUpdater.Affiliation.NEUTRAL, R.drawable.icon_aff_neutral, radius, target));
         submenu.addWidget(createAffiliationOptionButton(
-            item, AffiliationUpdater.Affiliation.FRIENDLY, R.drawable.icon_aff_friendly, radius));
+            AffiliationUpdater.Affiliation.FRIENDLY, R.drawable.icon_aff_friendly, radius, target));
         submenu.addWidget(createAffiliationOptionButton(
-            item, AffiliationUpdater.Affiliation.HOSTILE, R.drawable.icon_aff_hostile, radius));
+            AffiliationUpdater.Affiliation.HOSTILE, R.drawable.icon_aff_hostile, radius, target));
 
         return submenu;
     }
@@ -129,13 +181,13 @@ public class AffiliationMenuFactory implements MapMenuFactory {
      * Create a button for a specific affiliation option
      */
     private MapMenuButtonWidget createAffiliationOptionButton(
-            MapItem item, AffiliationUpdater.Affiliation affiliation,
-            int drawableResId, float radius) {
+            final AffiliationUpdater.Affiliation affiliation,
+            int drawableResId, float radius, final MapItem target) {
 
         MapMenuButtonWidget button = new MapMenuButtonWidget(atakContext);
 
         // Set icon
-        button.setIcon(createWidgetIconFromDrawable(drawableResId));
+        button.setIcon(getWidgetIcon(drawableResId));
 
         // Set radius for submenu positioning
         button.setOrientation(button.getOrientationAngle(), radius);
@@ -149,18 +201,23 @@ public class AffiliationMenuFactory implements MapMenuFactory {
 
             @Override
             public void performAction(Object o) {
+                MapItem item = getTarget(o, target);
+                if (item == null) {
+                    Log.w(TAG, "No map item bound to affiliation menu");
+                    return;
+                }
+
                 Log.d(TAG, "Changing affiliation to " + affiliation.label +
                       " for " + item.getUID());
 
-                // Update affiliation and broadcast
-                boolean success = AffiliationUpdater.updateAffiliation(item, affiliation);
+                // Update and broadcast in the background; the toast follows
+                boolean queued = AffiliationUpdater.updateAffiliationAsync(item, affiliation,
+                        updateCallback);
 
-                if (success) {
-                    AffiliationUpdater.showToast("Affiliation changed to " +
-                                                affiliation.label);
+                if (queued) {
                     hideMenus();
                 } else {
-                    AffiliationUpdater.showToast("Failed to update affiliation");
+                    AffiliationUpdater.showToast("Too many pending updates, try again");
                 }
             }
         });
@@ -168,6 +225,44 @@ public class AffiliationMenuFactory implements MapMenuFactory {
         return button;
     }
 
+    // Reports the outcome of a menu selection once the update has run
+    private final AffiliationUpdater.UpdateCallback updateCallback =
+            new AffiliationUpdater.UpdateCallback() {
+                @Override
+                public void onUpdateComplete(MapItem mapItem,
+                                             AffiliationUpdater.Affiliation affiliation,
+                                             boolean success) {
+                    if (success) {
+                        AffiliationUpdater.showToast("Affiliation changed to " +
+                                                    affiliation.label);
+                    } else {
+                        AffiliationUpdater.showToast("Failed to update affiliation");
+                    }
+                }
+            };
+
+    /**
+     * The item an action applies to: the one ATAK passes in, otherwise the
+     * item the button's menu was opened for
+     */
+    private static MapItem getTarget(Object o, MapItem menuItem) {
+        return o instanceof MapItem ? (MapItem) o : menuItem;
+    }
+
+    /**
+     * Get the icon for a drawable resource, building it once
+     */
+    private WidgetIcon getWidgetIcon(int drawableResId) {
+        synchronized (icons) {
+            WidgetIcon icon = icons.get(drawableResId);
+            if (icon == null) {
+                icon = createWidgetIconFromDrawable(drawableResId);
+                icons.put(drawableResId, icon);
+            }
+            return icon;
+        }
+    }
+
     /**
      * Create a WidgetIcon from a drawable resource
      */
@@ -0,0 +1,145 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapItem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for updated markers. Dirty items are held back
+ * for a short delay after the first change, or until enough have gathered,
+ * and then written off the UI thread. Each item is still its own persist
+ * call; what is saved is the repeated writes of an item changed several
+ * times before a flush, which is written once with its latest state.
+ * Items removed from the map before the flush are not written.
+ */
+public class AffiliationPersister {
+    private static final String TAG = "AffiliationPersister";
+
+    /** Default time the first dirty item waits for others to join its batch */
+    public static final long DEFAULT_FLUSH_DELAY_MS = 500;
+    /** Default number of dirty items that triggers an immediate flush */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Writes a single item to the store
+     */
+    public interface Store {
+        void persist(MapItem mapItem);
+    }
+
+    private final Store store;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String, MapItem> dirty = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private boolean flushScheduled;
+
+    private long flushDelayMs = DEFAULT_FLUSH_DELAY_MS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public AffiliationPersister(Store store) {
+        this.store = store;
+
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "OmniCOT-persist");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = pool;
+    }
+
+    /**
+     * Change when batches are flushed
+     * @param flushDelayMs Time the first dirty item waits before its batch is written
+     * @param batchSize Number of dirty items that are written without waiting
+     */
+    public synchronized void configure(long flushDelayMs, int batchSize) {
+        if (flushDelayMs < 0 || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid persister configuration");
+        }
+        this.flushDelayMs = flushDelayMs;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queue an item to be written with the next flush
+     */
+    public void markDirty(MapItem mapItem) {
+        synchronized (this) {
+            dirty.put(mapItem.getUID(), mapItem);
+            if (dirty.size() == batchSize) {
+                // Items arriving before the flush runs join this batch
+                executor.execute(flushTask);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(flushTask, flushDelayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Write every dirty item now, on the calling thread
+     */
+    public void flush() {
+        List<MapItem> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (dirty.isEmpty()) return;
+            batch = new ArrayList<>(dirty.size());
+            for (MapItem mapItem : dirty.values()) {
+                // Persisting a marker deleted since it was marked would bring it back
+                if (mapItem.getGroup() != null) {
+                    batch.add(mapItem);
+                }
+            }
+            dirty.clear();
+        }
+        if (batch.isEmpty()) return;
+
+        // Flushes from the timer and from onStop must not interleave
+        synchronized (flushLock) {
+            long start = System.nanoTime();
+            int failed = 0;
+            for (MapItem mapItem : batch) {
+                try {
+                    store.persist(mapItem);
+                } catch (Exception e) {
+                    failed++;
+                    Log.e(TAG, "Error persisting " + mapItem.getUID(), e);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            PluginMetrics.PERSIST_FLUSH.record(elapsed);
+            PluginMetrics.PERSIST_BATCHES.increment();
+            PluginMetrics.PERSISTED_ITEMS.add(batch.size() - failed);
+            Trace.record(Trace.INFO, Trace.PERSIST_FLUSHED, batch.size(), failed, elapsed);
+        }
+    }
+
+    /**
+     * Number of items waiting to be written
+     */
+    public synchronized int getDirtyCount() {
+        return dirty.size();
+    }
+}
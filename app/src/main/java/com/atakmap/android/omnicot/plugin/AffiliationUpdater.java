@@ -7,9 +7,14 @@ import com.atakmap.android.cot.CotMapComponent;
 import com.atakmap.android.importexport.CotEventFactory;
 import com.atakmap.android.maps.MapItem;
 import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.PointMapItem;
 import com.atakmap.coremap.cot.event.CotDetail;
 import com.atakmap.coremap.cot.event.CotEvent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Utility class to update marker affiliations and broadcast changes via COT
  */
@@ -39,7 +44,57 @@ public class AffiliationUpdater {
     }
 
     /**
-     * Update a marker's affiliation and broadcast to all team members
+     * Receives the outcome of an asynchronous affiliation update on the UI thread
+     */
+    public interface UpdateCallback {
+        void onUpdateComplete(MapItem mapItem, Affiliation affiliation, boolean success);
+    }
+
+    // Updates for one UID run in order; different UIDs run side by side
+    private static final int UPDATE_THREADS = 2;
+    private static final int UPDATE_CAPACITY = 256;
+    private static final KeyedSerialExecutor updateExecutor =
+            new KeyedSerialExecutor("OmniCOT-update", UPDATE_THREADS, UPDATE_CAPACITY);
+
+    // Send minimal events instead of the marker's full detail tree
+    private static volatile boolean leanEvents;
+
+    // Writes updated markers to the store in batches
+    private static final AffiliationPersister persister =
+            new AffiliationPersister(new AffiliationPersister.Store() {
+                @Override
+                public void persist(MapItem mapItem) {
+                    AffiliationUpdater.persist(mapItem);
+                }
+            });
+
+    // Rate limits outbound events and sends the most important ones first
+    private static final OutboundCotScheduler outboundScheduler =
+            new OutboundCotScheduler(new OutboundCotScheduler.Sender() {
+                @Override
+                public void send(CotEvent event) {
+                    // CRITICAL: Broadcast to all team members via COT dispatcher
+                    // Use static method to get dispatcher
+                    long start = System.nanoTime();
+                    CotMapComponent.getInternalDispatcher().dispatch(event);
+                    PluginMetrics.AFFILIATION_DISPATCH.recordSince(start);
+                }
+            });
+
+    // Merges quick successive changes to one marker into a single broadcast
+    private static final AffiliationBroadcastQueue broadcastQueue =
+            new AffiliationBroadcastQueue(new AffiliationBroadcastQueue.Sender() {
+                @Override
+                public void send(MapItem mapItem) {
+                    broadcastCurrentState(mapItem);
+                }
+            });
+
+    /**
+     * Update a marker's affiliation and broadcast to all team members. The
+     * marker changes locally right away; the broadcast waits a short window
+     * so quick successive changes go out as a single message. Runs on the
+     * calling thread; see updateAffiliationAsync for UI callers.
      * @param mapItem The map item to update
      * @param newAffiliation The new affiliation
      * @return true if successful, false otherwise
@@ -50,66 +105,28 @@ public class AffiliationUpdater {
             return false;
         }
 
+        long start = System.nanoTime();
         try {
             // Get current COT type (e.g., "a-f-G-E-V")
             String currentType = mapItem.getType();
-            if (currentType == null || currentType.length() < 3) {
+            String newType = getUpdatedType(currentType, newAffiliation);
+            if (newType == null) {
                 Log.w(TAG, "Invalid COT type: " + currentType);
                 return false;
             }
 
-            // Parse and update affiliation character at index 2
-            char[] typeChars = currentType.toCharArray();
-            char oldAffiliation = typeChars.length > 2 ? typeChars[2] : 'u';
-            typeChars[2] = newAffiliation.code;
-            String newType = new String(typeChars);
-
-            Log.d(TAG, "Updating affiliation from '" + oldAffiliation +
+            Log.d(TAG, "Updating affiliation from '" + currentType.charAt(2) +
                   "' to '" + newAffiliation.code + "' for " + mapItem.getUID());
 
-            // Create COT event from existing map item
-            CotEvent cotEvent = CotEventFactory.createCotEvent(mapItem);
-            if (cotEvent == null) {
-                Log.w(TAG, "Failed to create COT event from map item");
-                return false;
-            }
-
-            // Update the type to reflect new affiliation
-            cotEvent.setType(newType);
-            cotEvent.setHow("h-e"); // Human entry
-
-            // Add remark about affiliation change
-            CotDetail detail = cotEvent.getDetail();
-            if (detail != null) {
-                CotDetail remarks = detail.getFirstChildByName(0, "remarks");
-                if (remarks == null) {
-                    remarks = new CotDetail("remarks");
-                    detail.addChild(remarks);
-                }
-                String existingRemarks = remarks.getInnerText();
-                String newRemarks = "Affiliation changed to " + newAffiliation.label +
-                                  " via OmniCOT plugin";
-                if (existingRemarks != null && !existingRemarks.isEmpty()) {
-                    newRemarks = existingRemarks + "; " + newRemarks;
-                }
-                remarks.setInnerText(newRemarks);
-            }
+            // Update locally right away for immediate feedback
+            applyLocalUpdate(mapItem, newType, newAffiliation,
+                    OmniCotDetail.nextChange(mapItem, newType));
+            persister.markDirty(mapItem);
 
-            // CRITICAL: Broadcast to all team members via COT dispatcher
-            // Use static method to get dispatcher
-            CotMapComponent.getInternalDispatcher().dispatch(cotEvent);
-            Log.i(TAG, "Affiliation update broadcasted for " + mapItem.getUID());
-
-            // Update local metadata for immediate feedback
-            mapItem.setType(newType);
-            mapItem.setMetaString("affiliation", newAffiliation.label);
-            
-            // Mark this item as updated by OmniCOT for statistics tracking
-            CotStatistics.markAsUpdated(mapItem);
-            
-            mapItem.persist(MapView.getMapView().getMapEventDispatcher(), null,
-                          AffiliationUpdater.class);
+            // Broadcast to all team members once the marker stops changing
+            broadcastQueue.enqueue(mapItem, currentType);
 
+            PluginMetrics.AFFILIATION_UPDATE.recordSince(start);
             return true;
 
         } catch (Exception e) {
@@ -118,6 +135,329 @@ public class AffiliationUpdater {
         }
     }
 
+    /**
+     * Update a marker's affiliation off the calling thread. Updates to the
+     * same marker are applied in the order they were requested.
+     * @param mapItem The map item to update
+     * @param newAffiliation The new affiliation
+     * @param callback Told the outcome on the UI thread, may be null
+     * @return false if too many updates are already waiting and this one
+     * was not queued; the callback is not called in that case
+     */
+    public static boolean updateAffiliationAsync(final MapItem mapItem,
+                                                 final Affiliation newAffiliation,
+                                                 final UpdateCallback callback) {
+        if (mapItem == null) {
+            Log.w(TAG, "Cannot update null MapItem");
+            return false;
+        }
+
+        boolean queued = updateExecutor.submit(mapItem.getUID(), new Runnable() {
+            @Override
+            public void run() {
+                final boolean success = updateAffiliation(mapItem, newAffiliation);
+                if (callback == null) return;
+
+                MapView mapView = MapView.getMapView();
+                if (mapView == null) return;
+                mapView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onUpdateComplete(mapItem, newAffiliation, success);
+                    }
+                });
+            }
+        });
+
+        if (!queued) {
+            Log.w(TAG, "Update queue full, rejected update for " + mapItem.getUID()
+                    + ": " + updateExecutor);
+        }
+        return queued;
+    }
+
+    /**
+     * Wait for queued asynchronous updates to finish
+     * @return true if all finished within the timeout
+     */
+    public static boolean awaitUpdates(long timeoutMs) {
+        try {
+            return updateExecutor.awaitIdle(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Get the update executor, e.g. to read its counters
+     */
+    public static KeyedSerialExecutor getUpdateExecutor() {
+        return updateExecutor;
+    }
+
+    /**
+     * Set how long a change waits for further changes to the same marker
+     * before it is broadcast. 0 broadcasts every change immediately.
+     */
+    public static void setBroadcastWindow(long windowMs) {
+        broadcastQueue.setWindowMs(windowMs);
+    }
+
+    /**
+     * Broadcast all pending affiliation changes now, ignoring the rate limit
+     */
+    public static void flushBroadcasts() {
+        broadcastQueue.flush();
+        outboundScheduler.flush();
+    }
+
+    /**
+     * Choose between lean events, which carry only what an affiliation
+     * change needs, and full events built from the marker's whole detail
+     * tree. Full events are the default; the dashboard changes this
+     * through OmniCotSettings.
+     */
+    public static void setLeanEvents(boolean lean) {
+        leanEvents = lean;
+    }
+
+    public static boolean isLeanEvents() {
+        return leanEvents;
+    }
+
+    /**
+     * Write all markers waiting in the write-behind persister now
+     */
+    public static void flushPersistence() {
+        persister.flush();
+    }
+
+    /**
+     * Get the write-behind persister, e.g. to tune its batching
+     */
+    public static AffiliationPersister getPersister() {
+        return persister;
+    }
+
+    /**
+     * Get the outbound scheduler, e.g. to tune its rate or read its counters
+     */
+    public static OutboundCotScheduler getOutboundScheduler() {
+        return outboundScheduler;
+    }
+
+    /**
+     * Broadcast a marker's current type to all team members
+     */
+    private static void broadcastCurrentState(MapItem mapItem) {
+        CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe(mapItem.getType());
+        if (!descriptor.isValid()) {
+            Log.w(TAG, "Invalid COT type: " + descriptor.getType());
+            return;
+        }
+        String type = descriptor.getType();
+
+        // Create COT event from existing map item
+        Affiliation affiliation = Affiliation.fromCode(descriptor.getAffiliation());
+        CotEvent cotEvent = buildAffiliationEvent(mapItem, type,
+                OmniCotDetail.readLast(mapItem));
+        if (cotEvent == null) {
+            Log.w(TAG, "Failed to create COT event from map item");
+            return;
+        }
+
+        if (!outboundScheduler.submit(mapItem.getUID(),
+                OutboundCotScheduler.Priority.forAffiliation(affiliation), cotEvent,
+                retryWhenDropped(mapItem))) {
+            Log.w(TAG, "Outbound queue full, affiliation update not sent for "
+                    + mapItem.getUID());
+            return;
+        }
+        Log.i(TAG, "Affiliation update queued for broadcast for " + mapItem.getUID());
+    }
+
+    /**
+     * Listener that queues a marker's broadcast again when its accepted event
+     * is evicted by more important traffic. The retry is submitted at the
+     * same priority, so it can only evict events less important than itself
+     * and gives up once the queue holds nothing lower.
+     */
+    private static OutboundCotScheduler.DropListener retryWhenDropped(final MapItem mapItem) {
+        return new OutboundCotScheduler.DropListener() {
+            @Override
+            public void onDropped(String uid, OutboundCotScheduler.Priority priority) {
+                Log.w(TAG, "Accepted " + priority + " event for " + uid
+                        + " was evicted, retrying broadcast");
+                // No previous type, so the retry is never suppressed as a no-op
+                broadcastQueue.enqueue(mapItem, null);
+            }
+        };
+    }
+
+    /**
+     * Update the affiliation of many markers at once. Types are validated
+     * up front, events are built in one pass and handed to the outbound
+     * scheduler as they are built, and all items are handed to the
+     * write-behind persister together at the end. An UPDATED item whose
+     * event is later evicted by more important traffic is broadcast again.
+     * @param mapItems The map items to update
+     * @param newAffiliation The new affiliation
+     * @return Report with the outcome for every item
+     */
+    public static AffiliationBatchReport updateAffiliations(
+            Collection<? extends MapItem> mapItems, Affiliation newAffiliation) {
+        AffiliationBatchReport report = new AffiliationBatchReport(newAffiliation);
+        if (mapItems == null || mapItems.isEmpty()) {
+            report.finish();
+            return report;
+        }
+
+        // Validate every item before anything is built or sent
+        List<MapItem> validItems = new ArrayList<>(mapItems.size());
+        List<String> newTypes = new ArrayList<>(mapItems.size());
+        for (MapItem mapItem : mapItems) {
+            if (mapItem == null) {
+                report.add(null, AffiliationBatchReport.Status.INVALID, "Null map item");
+                continue;
+            }
+            String currentType = mapItem.getType();
+            String newType = getUpdatedType(currentType, newAffiliation);
+            if (newType == null) {
+                report.add(mapItem.getUID(), AffiliationBatchReport.Status.INVALID,
+                        "Invalid COT type: " + currentType);
+            } else if (newType.equals(currentType)) {
+                report.add(mapItem.getUID(), AffiliationBatchReport.Status.UNCHANGED,
+                        "Already " + newAffiliation.label);
+            } else {
+                validItems.add(mapItem);
+                newTypes.add(newType);
+            }
+        }
+
+        // Build events in one pass, handing each to the outbound scheduler,
+        // which sends them on its own thread while the next is built
+        OutboundCotScheduler.Priority priority =
+                OutboundCotScheduler.Priority.forAffiliation(newAffiliation);
+        List<MapItem> updatedItems = new ArrayList<>(validItems.size());
+        for (int i = 0; i < validItems.size(); i++) {
+            MapItem mapItem = validItems.get(i);
+            String newType = newTypes.get(i);
+            AffiliationChange change = null;
+            CotEvent cotEvent = null;
+            try {
+                // The event describes this change, which is only recorded on
+                // the marker once the event has been handed off
+                change = OmniCotDetail.nextChange(mapItem, newType);
+                cotEvent = buildAffiliationEvent(mapItem, newType, change);
+            } catch (Exception e) {
+                Log.e(TAG, "Error building COT event for " + mapItem.getUID(), e);
+            }
+
+            if (cotEvent == null) {
+                report.add(mapItem.getUID(), AffiliationBatchReport.Status.BUILD_FAILED,
+                        "Failed to create COT event from map item");
+                continue;
+            }
+
+            if (!outboundScheduler.submit(mapItem.getUID(), priority, cotEvent,
+                    retryWhenDropped(mapItem))) {
+                report.add(mapItem.getUID(), AffiliationBatchReport.Status.DISPATCH_FAILED,
+                        "Outbound queue full");
+                continue;
+            }
+
+            // The batch event supersedes any queued broadcast; cancelling only
+            // now keeps that broadcast if building or submitting failed
+            broadcastQueue.cancel(mapItem.getUID());
+
+            // Apply local changes for everything that went out
+            applyLocalUpdate(mapItem, newType, newAffiliation, change);
+            updatedItems.add(mapItem);
+            report.add(mapItem.getUID(), AffiliationBatchReport.Status.UPDATED, null);
+        }
+
+        // Queue the writes once all events are out; the persister writes
+        // each item separately, off this thread, after a short delay
+        for (MapItem mapItem : updatedItems) {
+            persister.markDirty(mapItem);
+        }
+
+        report.finish();
+        Log.i(TAG, "Batch affiliation update: " + report);
+        return report;
+    }
+
+    /**
+     * Get the COT type with the affiliation character replaced
+     * @return The new type, or null if the current type is invalid
+     */
+    static String getUpdatedType(String currentType, Affiliation newAffiliation) {
+        // Rewritten types are cached per descriptor, so this rarely allocates
+        return CotTypeCodec.describe(currentType).withAffiliation(newAffiliation.code);
+    }
+
+    /**
+     * Build the COT event announcing a marker's new affiliation
+     * @param change The change carried in the event's detail, or null for none
+     * @return The event, or null if one could not be created from the item
+     */
+    private static CotEvent buildAffiliationEvent(MapItem mapItem, String newType,
+                                                  AffiliationChange change) {
+        long start = System.nanoTime();
+        try {
+            return createAffiliationEvent(mapItem, newType, change);
+        } finally {
+            PluginMetrics.AFFILIATION_BUILD.recordSince(start);
+        }
+    }
+
+    private static CotEvent createAffiliationEvent(MapItem mapItem, String newType,
+                                                   AffiliationChange change) {
+        if (leanEvents && mapItem instanceof PointMapItem) {
+            CotEvent leanEvent = LeanCotEvent.create((PointMapItem) mapItem, newType, change);
+            if (leanEvent != null) return leanEvent;
+        }
+
+        CotEvent cotEvent = CotEventFactory.createCotEvent(mapItem);
+        if (cotEvent == null) return null;
+
+        // Update the type to reflect new affiliation
+        cotEvent.setType(newType);
+        cotEvent.setHow("h-e"); // Human entry
+
+        // Describe the change in a fixed-size detail element instead of remarks
+        CotDetail detail = cotEvent.getDetail();
+        if (detail != null) {
+            OmniCotDetail.apply(detail, change);
+        }
+        return cotEvent;
+    }
+
+    /**
+     * Update local metadata for immediate feedback
+     */
+    private static void applyLocalUpdate(MapItem mapItem, String newType,
+                                         Affiliation newAffiliation,
+                                         AffiliationChange change) {
+        if (change != null) {
+            OmniCotDetail.store(mapItem, change);
+        }
+
+        mapItem.setType(newType);
+        mapItem.setMetaString("affiliation", newAffiliation.label);
+
+        // Mark this item as updated by OmniCOT for statistics tracking
+        CotStatistics.markAsUpdated(mapItem);
+    }
+
+    private static void persist(MapItem mapItem) {
+        long start = System.nanoTime();
+        mapItem.persist(MapView.getMapView().getMapEventDispatcher(), null,
+                      AffiliationUpdater.class);
+        PluginMetrics.AFFILIATION_PERSIST.recordSince(start);
+    }
+
 
     /**
      * Get current affiliation from a marker's type
@@ -125,9 +465,9 @@ public class AffiliationUpdater {
     public static Affiliation getCurrentAffiliation(MapItem mapItem) {
         if (mapItem == null) return Affiliation.UNKNOWN;
 
-        String type = mapItem.getType();
-        if (type != null && type.length() > 2) {
-            return Affiliation.fromCode(type.charAt(2));
+        CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe(mapItem.getType());
+        if (descriptor.isValid()) {
+            return Affiliation.fromCode(descriptor.getAffiliation());
         }
         return Affiliation.UNKNOWN;
     }
@@ -9,7 +9,9 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ListView adapter for displaying AOI cards
@@ -18,9 +20,16 @@ public class AoiAdapter extends BaseAdapter {
     private static final String TAG = "AoiAdapter";
 
     private Context context;
-    private List<AoiInfo> aoiList = new ArrayList<>();
+    private final AoiDataSource dataSource = new AoiDataSource();
     private OnAoiActionListener listener;
 
+    // Row IDs stay with an AOI for as long as it is listed
+    private final Map<String, Long> stableIds = new HashMap<>();
+    private long nextStableId;
+
+    // Holders currently showing each AOI, so changed rows can be rebound in place
+    private final Map<String, ViewHolder> boundHolders = new HashMap<>();
+
     /**
      * Interface for handling AOI card actions
      */
@@ -35,33 +44,99 @@ public class AoiAdapter extends BaseAdapter {
     }
 
     /**
-     * Update the list of AOIs and refresh the view
+     * Update the list of AOIs. The list is only relaid out when rows were
+     * inserted, removed or reordered; otherwise visible rows are rebound in
+     * place.
      */
     public void setAoiList(List<AoiInfo> aoiList) {
-        this.aoiList = aoiList != null ? aoiList : new ArrayList<>();
-        notifyDataSetChanged();
+        List<AoiInfo> newList = aoiList != null
+                ? new ArrayList<>(aoiList) : new ArrayList<AoiInfo>();
+        AoiListDiff diff = AoiListDiff.compute(getUids(dataSource.getAois()), getUids(newList));
+        dataSource.setAois(newList);
+
+        for (String uid : diff.getRemoved()) {
+            stableIds.remove(uid);
+            boundHolders.remove(uid);
+        }
+
+        if (diff.isStructural()) {
+            Trace.record(Trace.DEBUG, Trace.AOI_LIST_CHANGED, diff.getRemoved().size(),
+                    diff.getInserted().size(), diff.isReordered() ? 1 : 0);
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (int i = 0; i < newList.size(); i++) {
+            ViewHolder holder = boundHolders.get(newList.get(i).getUid());
+            if (holder != null) {
+                holder.refresh(dataSource.getRow(i), listener);
+            }
+        }
+    }
+
+    /**
+     * Remove a single AOI row
+     * @return true if the AOI was listed
+     */
+    public boolean removeAoi(String uid) {
+        for (int i = 0; i < dataSource.size(); i++) {
+            if (dataSource.getAoi(i).getUid().equals(uid)) {
+                dataSource.remove(i);
+                stableIds.remove(uid);
+                boundHolders.remove(uid);
+                notifyDataSetChanged();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> getUids(List<AoiInfo> aois) {
+        List<String> uids = new ArrayList<>(aois.size());
+        for (AoiInfo aoiInfo : aois) {
+            uids.add(aoiInfo.getUid());
+        }
+        return uids;
     }
 
     /**
      * Get current AOI list
      */
     public List<AoiInfo> getAoiList() {
-        return aoiList;
+        return dataSource.getAois();
+    }
+
+    /**
+     * Materialize the visible rows and the page after them ahead of binding
+     */
+    public void prefetch(int firstVisible, int visibleCount) {
+        dataSource.prefetch(firstVisible, visibleCount);
     }
 
     @Override
     public int getCount() {
-        return aoiList.size();
+        return dataSource.size();
     }
 
     @Override
     public AoiInfo getItem(int position) {
-        return aoiList.get(position);
+        return dataSource.getAoi(position);
     }
 
     @Override
     public long getItemId(int position) {
-        return position;
+        String uid = dataSource.getAoi(position).getUid();
+        Long id = stableIds.get(uid);
+        if (id == null) {
+            id = nextStableId++;
+            stableIds.put(uid, id);
+        }
+        return id;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
@@ -77,8 +152,13 @@ public class AoiAdapter extends BaseAdapter {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        final AoiInfo aoiInfo = getItem(position);
-        holder.bind(aoiInfo, listener);
+        AoiDataSource.Row row = dataSource.getRow(position);
+        if (holder.boundRow != null
+                && boundHolders.get(holder.boundRow.getAoi().getUid()) == holder) {
+            boundHolders.remove(holder.boundRow.getAoi().getUid());
+        }
+        holder.refresh(row, listener);
+        boundHolders.put(row.getAoi().getUid(), holder);
 
         return convertView;
     }
@@ -91,9 +171,12 @@ public class AoiAdapter extends BaseAdapter {
         private final TextView shapeTypeTextView;
         private final TextView areaTextView;
         private final TextView coordinatesTextView;
+        private final TextView affiliationCountsTextView;
+        private final int[] affiliationCounts = new int[AoiAffiliationJoin.AFFILIATION_COUNT];
         private final Button zoomButton;
         private final Button deleteButton;
         private final View itemView;
+        private AoiDataSource.Row boundRow;
 
         public ViewHolder(View itemView) {
             this.itemView = itemView;
@@ -101,16 +184,33 @@ public class AoiAdapter extends BaseAdapter {
             shapeTypeTextView = itemView.findViewById(R.id.aoi_shape_type);
             areaTextView = itemView.findViewById(R.id.aoi_area);
             coordinatesTextView = itemView.findViewById(R.id.aoi_coordinates);
+            affiliationCountsTextView = itemView.findViewById(R.id.aoi_affiliation_counts);
             zoomButton = itemView.findViewById(R.id.btn_zoom_to_aoi);
             deleteButton = itemView.findViewById(R.id.btn_delete_aoi);
         }
 
-        public void bind(final AoiInfo aoiInfo, final OnAoiActionListener listener) {
+        /**
+         * Rebind only if the row now shows a different AOI; affiliation
+         * counts are always refreshed since they change independently
+         */
+        void refresh(AoiDataSource.Row row, OnAoiActionListener listener) {
+            if (boundRow == null || row.getAoi() != boundRow.getAoi()) {
+                bind(row, listener);
+            } else {
+                bindAffiliationCounts(row.getAoi());
+            }
+        }
+
+        public void bind(AoiDataSource.Row row, final OnAoiActionListener listener) {
+            boundRow = row;
+            final AoiInfo aoiInfo = row.getAoi();
+
             // Set text values
-            nameTextView.setText(aoiInfo.getName());
-            shapeTypeTextView.setText(aoiInfo.getShapeType());
-            areaTextView.setText(aoiInfo.getFormattedArea());
-            coordinatesTextView.setText(aoiInfo.getFormattedCoordinates());
+            nameTextView.setText(row.getName());
+            shapeTypeTextView.setText(row.getShapeType());
+            areaTextView.setText(row.getFormattedArea());
+            coordinatesTextView.setText(row.getFormattedCoordinates());
+            bindAffiliationCounts(aoiInfo);
 
             // Set click listeners
             zoomButton.setOnClickListener(new View.OnClickListener() {
@@ -141,5 +241,23 @@ public class AoiAdapter extends BaseAdapter {
                 }
             });
         }
+
+        /**
+         * Show the markers inside the AOI by affiliation, read from the live join
+         */
+        private void bindAffiliationCounts(AoiInfo aoiInfo) {
+            AoiAffiliationJoin join = AoiAffiliationJoin.getInstance();
+            if (join == null) {
+                affiliationCountsTextView.setText("-");
+                return;
+            }
+
+            join.getCounts(aoiInfo.getUid(), affiliationCounts);
+            affiliationCountsTextView.setText(
+                    "U " + affiliationCounts[AoiAffiliationJoin.UNKNOWN]
+                    + "   N " + affiliationCounts[AoiAffiliationJoin.NEUTRAL]
+                    + "   F " + affiliationCounts[AoiAffiliationJoin.FRIENDLY]
+                    + "   H " + affiliationCounts[AoiAffiliationJoin.HOSTILE]);
+        }
     }
 }
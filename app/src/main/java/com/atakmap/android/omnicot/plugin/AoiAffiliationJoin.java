@@ -0,0 +1,308 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapEvent;
+import com.atakmap.android.maps.MapEventDispatcher;
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapItem;
+import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.Marker;
+import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial join of CoT markers against AOIs, giving the number of unknown,
+ * neutral, friendly and hostile markers inside each AOI. Markers are looked
+ * up in the AOI spatial index when they are added, move or change
+ * affiliation, so reading the counts for a card is a single map lookup.
+ */
+public class AoiAffiliationJoin implements MapEventDispatcher.MapEventDispatchListener,
+        MapItem.OnTypeChangedListener, PointMapItem.OnPointChangedListener {
+    private static final String TAG = "AoiAffiliationJoin";
+
+    /** Index of each affiliation in a counts array */
+    public static final int UNKNOWN = 0;
+    public static final int NEUTRAL = 1;
+    public static final int FRIENDLY = 2;
+    public static final int HOSTILE = 3;
+    public static final int AFFILIATION_COUNT = 4;
+
+    private static AoiAffiliationJoin instance;
+
+    /**
+     * Where a marker was last joined, so its contribution can be removed exactly
+     */
+    private static class JoinedMarker {
+        int affiliation;
+        double lat;
+        double lon;
+        String[] aoiUids;
+    }
+
+    private static final String[] NO_AOIS = new String[0];
+
+    private final Map<String, JoinedMarker> markers = new HashMap<>();
+    private final Map<String, int[]> aoiCounts = new HashMap<>();
+    private final List<AoiInfo> scratch = new ArrayList<>();
+    private AoiSpatialIndex<AoiInfo> index;
+    private MapView mapView;
+
+    /**
+     * Get the running instance, or null if the join is not started
+     */
+    public static synchronized AoiAffiliationJoin getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start joining markers against the current AOIs
+     * @return The running instance, or null if the map is not available
+     */
+    public static synchronized AoiAffiliationJoin start() {
+        if (instance != null) return instance;
+
+        MapView mapView = MapView.getMapView();
+        if (mapView == null) {
+            Log.w(TAG, "MapView is null");
+            return null;
+        }
+
+        AoiAffiliationJoin join = new AoiAffiliationJoin();
+        join.attach(mapView, AoiManager.getSpatialIndex());
+        instance = join;
+        return join;
+    }
+
+    /**
+     * Stop joining and release all map listeners
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.detach();
+            instance = null;
+        }
+    }
+
+    private void attach(MapView mapView, AoiSpatialIndex<AoiInfo> index) {
+        this.mapView = mapView;
+        this.index = index;
+
+        MapEventDispatcher dispatcher = mapView.getMapEventDispatcher();
+        dispatcher.addMapEventListener(MapEvent.ITEM_ADDED, this);
+        dispatcher.addMapEventListener(MapEvent.ITEM_REMOVED, this);
+
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup != null) {
+            MapModelTraversal.Report report = MapTraversal.walk(rootGroup,
+                    new MapTraversal.Collector() {
+                        @Override
+                        public String getName() {
+                            return "AoiAffiliationJoin seed";
+                        }
+
+                        @Override
+                        public void visit(MapItem item) {
+                            onItemAdded(item);
+                        }
+                    });
+            Log.d(TAG, "Seed traversal: " + report);
+        }
+    }
+
+    private void detach() {
+        if (mapView == null) return;
+
+        MapEventDispatcher dispatcher = mapView.getMapEventDispatcher();
+        dispatcher.removeMapEventListener(MapEvent.ITEM_ADDED, this);
+        dispatcher.removeMapEventListener(MapEvent.ITEM_REMOVED, this);
+
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup != null) {
+            MapTraversal.walk(rootGroup, new MapTraversal.Collector() {
+                @Override
+                public String getName() {
+                    return "AoiAffiliationJoin release";
+                }
+
+                @Override
+                public void visit(MapItem item) {
+                    if (item instanceof Marker) {
+                        removeListeners((Marker) item);
+                    }
+                }
+            });
+        }
+
+        synchronized (this) {
+            markers.clear();
+            aoiCounts.clear();
+        }
+        mapView = null;
+    }
+
+    /**
+     * Re-join all markers against a new set of AOIs
+     */
+    public synchronized void setIndex(AoiSpatialIndex<AoiInfo> index) {
+        this.index = index;
+        aoiCounts.clear();
+        for (JoinedMarker joined : markers.values()) {
+            joined.aoiUids = findAoiUids(joined.lat, joined.lon);
+            addContribution(joined, 1);
+        }
+        Trace.record(Trace.INFO, Trace.AOIS_REJOINED, markers.size(),
+                index != null ? index.size() : 0);
+    }
+
+    /**
+     * Copy the affiliation counts for an AOI into out, indexed by UNKNOWN,
+     * NEUTRAL, FRIENDLY and HOSTILE
+     * @return false if no markers are inside the AOI
+     */
+    public synchronized boolean getCounts(String aoiUid, int[] out) {
+        int[] counts = aoiCounts.get(aoiUid);
+        if (counts == null) {
+            for (int i = 0; i < AFFILIATION_COUNT; i++) out[i] = 0;
+            return false;
+        }
+        System.arraycopy(counts, 0, out, 0, AFFILIATION_COUNT);
+        return true;
+    }
+
+    @Override
+    public void onMapEvent(MapEvent event) {
+        MapItem item = event.getItem();
+        if (item == null) return;
+
+        if (MapEvent.ITEM_ADDED.equals(event.getType())) {
+            onItemAdded(item);
+        } else if (MapEvent.ITEM_REMOVED.equals(event.getType())) {
+            if (item instanceof Marker) {
+                removeListeners((Marker) item);
+                synchronized (this) {
+                    unjoin(item.getUID());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onTypeChanged(MapItem item) {
+        if (item instanceof Marker) {
+            rejoin((Marker) item);
+        }
+    }
+
+    @Override
+    public void onPointChanged(PointMapItem item) {
+        if (item instanceof Marker) {
+            rejoin((Marker) item);
+        }
+    }
+
+    private void onItemAdded(MapItem item) {
+        if (!(item instanceof Marker)) return;
+
+        Marker marker = (Marker) item;
+        marker.addOnTypeChangedListener(this);
+        marker.addOnPointChangedListener(this);
+        rejoin(marker);
+    }
+
+    private void removeListeners(Marker marker) {
+        marker.removeOnTypeChangedListener(this);
+        marker.removeOnPointChangedListener(this);
+    }
+
+    private synchronized void rejoin(Marker marker) {
+        String uid = marker.getUID();
+        int affiliation = getAffiliationIndex(marker);
+        GeoPoint point = marker.getPoint();
+        if (affiliation < 0 || point == null) {
+            unjoin(uid);
+            return;
+        }
+
+        double lat = point.getLatitude();
+        double lon = point.getLongitude();
+        JoinedMarker joined = markers.get(uid);
+        if (joined != null && joined.affiliation == affiliation
+                && joined.lat == lat && joined.lon == lon) {
+            return;
+        }
+
+        if (joined == null) {
+            joined = new JoinedMarker();
+            markers.put(uid, joined);
+        } else {
+            addContribution(joined, -1);
+        }
+
+        joined.affiliation = affiliation;
+        joined.lat = lat;
+        joined.lon = lon;
+        joined.aoiUids = findAoiUids(lat, lon);
+        addContribution(joined, 1);
+    }
+
+    private void unjoin(String uid) {
+        JoinedMarker joined = markers.remove(uid);
+        if (joined != null) {
+            addContribution(joined, -1);
+        }
+    }
+
+    private String[] findAoiUids(double lat, double lon) {
+        if (index == null) return NO_AOIS;
+
+        scratch.clear();
+        index.findContaining(lat, lon, scratch);
+        if (scratch.isEmpty()) return NO_AOIS;
+
+        String[] uids = new String[scratch.size()];
+        for (int i = 0; i < uids.length; i++) {
+            uids[i] = scratch.get(i).getUid();
+        }
+        scratch.clear();
+        return uids;
+    }
+
+    private void addContribution(JoinedMarker joined, int delta) {
+        for (String aoiUid : joined.aoiUids) {
+            int[] counts = aoiCounts.get(aoiUid);
+            if (counts == null) {
+                counts = new int[AFFILIATION_COUNT];
+                aoiCounts.put(aoiUid, counts);
+            }
+            counts[joined.affiliation] += delta;
+        }
+    }
+
+    /**
+     * Map a marker to its affiliation bucket using the same rules as the
+     * CoT statistics, or -1 if it is not counted
+     */
+    static int getAffiliationIndex(MapItem item) {
+        String type = CotStatistics.getCountableType(item);
+        if (type == null) return -1;
+
+        switch (CotTypeCodec.describe(type).getAffiliation()) {
+            case 'u':
+                return UNKNOWN;
+            case 'n':
+                return NEUTRAL;
+            case 'f':
+                return FRIENDLY;
+            case 'h':
+                return HOSTILE;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backing data for the AOI list. Holds the AOIs themselves, but builds the
+ * display fields of a row (name lookup, formatted area and coordinates)
+ * only when the row is about to be shown, a page at a time, and keeps the
+ * results in a bounded LRU so thousands of AOIs cost nothing until scrolled to.
+ * Used from the UI thread only.
+ */
+public class AoiDataSource {
+
+    /** Rows materialized together around the requested one */
+    static final int PAGE_SIZE = 32;
+    /** Most rows kept materialized at once */
+    static final int MAX_CACHED_ROWS = 256;
+
+    /**
+     * Display fields of one AOI row
+     */
+    public static class Row {
+        private final AoiInfo aoi;
+        private final String name;
+        private final String shapeType;
+        private final String formattedArea;
+        private final String formattedCoordinates;
+
+        Row(AoiInfo aoi) {
+            this.aoi = aoi;
+            this.name = aoi.getName();
+            this.shapeType = aoi.getShapeType();
+            this.formattedArea = aoi.getFormattedArea();
+            this.formattedCoordinates = aoi.getFormattedCoordinates();
+        }
+
+        public AoiInfo getAoi() {
+            return aoi;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getShapeType() {
+            return shapeType;
+        }
+
+        public String getFormattedArea() {
+            return formattedArea;
+        }
+
+        public String getFormattedCoordinates() {
+            return formattedCoordinates;
+        }
+    }
+
+    private List<AoiInfo> aois = new ArrayList<>();
+
+    private final Map<String, Row> rows = new LinkedHashMap<String, Row>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Row> eldest) {
+            return size() > MAX_CACHED_ROWS;
+        }
+    };
+
+    private long hits;
+    private long misses;
+    private long pagesLoaded;
+
+    /**
+     * Replace the AOIs; materialized rows of unchanged AOIs are kept
+     */
+    public void setAois(List<AoiInfo> aois) {
+        this.aois = aois;
+    }
+
+    /**
+     * The AOIs in list order
+     */
+    public List<AoiInfo> getAois() {
+        return aois;
+    }
+
+    public int size() {
+        return aois.size();
+    }
+
+    public AoiInfo getAoi(int position) {
+        return aois.get(position);
+    }
+
+    /**
+     * Remove the AOI at a position along with its materialized row
+     */
+    public AoiInfo remove(int position) {
+        AoiInfo aoi = aois.remove(position);
+        rows.remove(aoi.getUid());
+        return aoi;
+    }
+
+    /**
+     * Get the display fields for a position, materializing its page if needed
+     */
+    public Row getRow(int position) {
+        AoiInfo aoi = aois.get(position);
+        Row row = rows.get(aoi.getUid());
+        if (row != null && row.aoi == aoi) {
+            hits++;
+            return row;
+        }
+
+        misses++;
+        row = materialize(aoi);
+        loadPage(position / PAGE_SIZE);
+        return row;
+    }
+
+    /**
+     * Materialize the rows on screen and the page after them
+     * @param first First visible position
+     * @param count Number of visible rows
+     */
+    public void prefetch(int first, int count) {
+        if (aois.isEmpty() || count <= 0) return;
+
+        int firstPage = Math.max(0, first) / PAGE_SIZE;
+        int lastPage = Math.min(aois.size() - 1, first + count + PAGE_SIZE) / PAGE_SIZE;
+        for (int page = firstPage; page <= lastPage; page++) {
+            loadPage(page);
+        }
+    }
+
+    private void loadPage(int page) {
+        int start = page * PAGE_SIZE;
+        int end = Math.min(aois.size(), start + PAGE_SIZE);
+        boolean loaded = false;
+        for (int i = start; i < end; i++) {
+            AoiInfo aoi = aois.get(i);
+            Row row = rows.get(aoi.getUid());
+            if (row == null || row.aoi != aoi) {
+                materialize(aoi);
+                loaded = true;
+            }
+        }
+        if (loaded) pagesLoaded++;
+    }
+
+    private Row materialize(AoiInfo aoi) {
+        Row row = new Row(aoi);
+        rows.put(aoi.getUid(), row);
+        return row;
+    }
+
+    /**
+     * Number of rows currently materialized
+     */
+    public int getCachedRowCount() {
+        return rows.size();
+    }
+
+    public long getHitCount() {
+        return hits;
+    }
+
+    public long getMissCount() {
+        return misses;
+    }
+
+    public long getPagesLoaded() {
+        return pagesLoaded;
+    }
+}
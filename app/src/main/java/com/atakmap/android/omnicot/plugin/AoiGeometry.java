@@ -0,0 +1,143 @@
+package com.atakmap.android.omnicot.plugin;
+
+/**
+ * Plain geometry of an AOI (circle or polygon) with its bounding box, used
+ * for exact point containment tests
+ */
+public class AoiGeometry {
+    // Mean earth radius used for circle containment and bounding boxes
+    private static final double EARTH_RADIUS = 6371008.8;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180.0;
+
+    private final String uid;
+
+    // Circle geometry, radius is 0 for polygons
+    private final double centerLat;
+    private final double centerLon;
+    private final double radius;
+
+    // Polygon geometry, null for circles
+    private final double[] lats;
+    private final double[] lons;
+
+    private final double minLat;
+    private final double maxLat;
+    private final double minLon;
+    private final double maxLon;
+
+    private AoiGeometry(String uid, double centerLat, double centerLon, double radius,
+                        double[] lats, double[] lons, double minLat, double maxLat,
+                        double minLon, double maxLon) {
+        this.uid = uid;
+        this.centerLat = centerLat;
+        this.centerLon = centerLon;
+        this.radius = radius;
+        this.lats = lats;
+        this.lons = lons;
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLon = minLon;
+        this.maxLon = maxLon;
+    }
+
+    /**
+     * Create a circle geometry
+     * @param radius Radius in meters
+     */
+    public static AoiGeometry circle(String uid, double centerLat, double centerLon,
+                                     double radius) {
+        double dLat = radius / METERS_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(centerLat));
+        double dLon = cosLat > 1e-9 ? Math.min(180.0, dLat / cosLat) : 180.0;
+        return new AoiGeometry(uid, centerLat, centerLon, radius, null, null,
+                centerLat - dLat, centerLat + dLat, centerLon - dLon, centerLon + dLon);
+    }
+
+    /**
+     * Create a polygon geometry from its vertices. The ring is closed implicitly.
+     * @return The geometry, or null if fewer than 3 vertices were given
+     */
+    public static AoiGeometry polygon(String uid, double[] lats, double[] lons) {
+        if (lats == null || lons == null || lats.length < 3 || lats.length != lons.length) {
+            return null;
+        }
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < lats.length; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        return new AoiGeometry(uid, (minLat + maxLat) / 2.0, (minLon + maxLon) / 2.0, 0,
+                lats, lons, minLat, maxLat, minLon, maxLon);
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public boolean isCircle() {
+        return lats == null;
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMaxLat() {
+        return maxLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    public double getMaxLon() {
+        return maxLon;
+    }
+
+    /**
+     * Check if the point falls inside this geometry's bounding box
+     */
+    public boolean boundsContain(double lat, double lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    /**
+     * Exact containment test
+     */
+    public boolean contains(double lat, double lon) {
+        if (!boundsContain(lat, lon)) return false;
+        return isCircle() ? circleContains(lat, lon) : polygonContains(lat, lon);
+    }
+
+    private boolean circleContains(double lat, double lon) {
+        // Haversine distance from the center
+        double phi1 = Math.toRadians(centerLat);
+        double phi2 = Math.toRadians(lat);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2.0);
+        double sinDLambda = Math.sin(Math.toRadians(lon - centerLon) / 2.0);
+        double h = sinDPhi * sinDPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        double distance = 2.0 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+        return distance <= radius;
+    }
+
+    private boolean polygonContains(double lat, double lon) {
+        // Even-odd ray casting in the lat/lon plane
+        boolean inside = false;
+        int n = lats.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)) {
+                double crossLon = lons[j] + (lat - lats[j]) * (lons[i] - lons[j])
+                        / (lats[i] - lats[j]);
+                if (lon < crossLon) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+}
@@ -8,19 +8,32 @@ import com.atakmap.coremap.maps.coords.GeoPoint;
  */
 public class AoiInfo {
     private final String uid;
-    private final String name;
+    private String name; // looked up on first use
     private final String shapeType;
     private final GeoPoint center;
     private final double area; // in square meters
+    private final double perimeter; // in meters
     private final MapItem mapItem;
+    private final AoiGeometry geometry;
 
     public AoiInfo(MapItem mapItem, String shapeType, GeoPoint center, double area) {
+        this(mapItem, shapeType, center, area, null);
+    }
+
+    public AoiInfo(MapItem mapItem, String shapeType, GeoPoint center, double area,
+                   AoiGeometry geometry) {
+        this(mapItem, shapeType, center, area, 0.0, geometry);
+    }
+
+    public AoiInfo(MapItem mapItem, String shapeType, GeoPoint center, double area,
+                   double perimeter, AoiGeometry geometry) {
         this.mapItem = mapItem;
+        this.geometry = geometry;
         this.uid = mapItem.getUID();
-        this.name = mapItem.getMetaString("callsign", mapItem.getTitle());
         this.shapeType = shapeType;
         this.center = center;
         this.area = area;
+        this.perimeter = perimeter;
     }
 
     public String getUid() {
@@ -28,7 +41,11 @@ public class AoiInfo {
     }
 
     public String getName() {
-        return name != null && !name.isEmpty() ? name : "Unnamed AOI";
+        if (name == null) {
+            String callsign = mapItem.getMetaString("callsign", mapItem.getTitle());
+            name = callsign != null && !callsign.isEmpty() ? callsign : "Unnamed AOI";
+        }
+        return name;
     }
 
     public String getShapeType() {
@@ -43,10 +60,24 @@ public class AoiInfo {
         return area;
     }
 
+    /**
+     * Perimeter in meters, 0 if not measured
+     */
+    public double getPerimeter() {
+        return perimeter;
+    }
+
     public MapItem getMapItem() {
         return mapItem;
     }
 
+    /**
+     * Geometry used for containment queries, may be null
+     */
+    public AoiGeometry getGeometry() {
+        return geometry;
+    }
+
     /**
      * Get formatted area string
      */
@@ -0,0 +1,90 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Structural check between two lists of AOI UIDs: which rows were removed,
+ * which were inserted, and whether the rows both lists share changed order.
+ * A ListView can only relayout as a whole, so this only decides between
+ * relaying out and rebinding the visible rows in place.
+ */
+public final class AoiListDiff {
+
+    private final List<String> removed;
+    private final List<String> inserted;
+    private final boolean reordered;
+
+    private AoiListDiff(List<String> removed, List<String> inserted, boolean reordered) {
+        this.removed = removed;
+        this.inserted = inserted;
+        this.reordered = reordered;
+    }
+
+    /**
+     * Compare two UID lists; UIDs are expected to be unique within each list
+     */
+    public static AoiListDiff compute(List<String> oldUids, List<String> newUids) {
+        Set<String> oldSet = new HashSet<>(oldUids);
+        Set<String> newSet = new HashSet<>(newUids);
+
+        List<String> removed = new ArrayList<>();
+        List<String> retained = new ArrayList<>();
+        for (String uid : oldUids) {
+            if (newSet.contains(uid)) {
+                retained.add(uid);
+            } else {
+                removed.add(uid);
+            }
+        }
+
+        // Retained rows keep their order if they appear in the same sequence
+        List<String> inserted = new ArrayList<>();
+        boolean reordered = false;
+        int next = 0;
+        for (String uid : newUids) {
+            if (!oldSet.contains(uid)) {
+                inserted.add(uid);
+            } else if (!reordered && !uid.equals(retained.get(next++))) {
+                reordered = true;
+            }
+        }
+        return new AoiListDiff(removed, inserted, reordered);
+    }
+
+    /**
+     * UIDs no longer in the list
+     */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * UIDs new to the list
+     */
+    public List<String> getInserted() {
+        return inserted;
+    }
+
+    /**
+     * True if rows in both lists are in a different order
+     */
+    public boolean isReordered() {
+        return reordered;
+    }
+
+    /**
+     * True if rows were added, removed or reordered
+     */
+    public boolean isStructural() {
+        return !removed.isEmpty() || !inserted.isEmpty() || reordered;
+    }
+
+    @Override
+    public String toString() {
+        return removed.size() + " removed, " + inserted.size() + " inserted"
+                + (reordered ? ", reordered" : "");
+    }
+}
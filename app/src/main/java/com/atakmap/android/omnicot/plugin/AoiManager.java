@@ -14,8 +14,9 @@ import com.atakmap.coremap.maps.coords.GeoPoint;
 import com.atakmap.coremap.maps.coords.GeoPointMetaData;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Utility class to find and manage Areas of Interest (AOI) on the ATAK map
@@ -23,11 +24,26 @@ import java.util.List;
 public class AoiManager {
     private static final String TAG = "AoiManager";
 
+    // Spatial index over the most recently collected AOIs
+    private static volatile AoiSpatialIndex<AoiInfo> spatialIndex;
+
+    // Geodesic measurements of polygon shapes, kept until their points change
+    private static final AoiMeasurementCache measurementCache = new AoiMeasurementCache();
+
     /**
      * Get all AOI shapes currently on the map
      * @return List of AoiInfo objects representing shapes
      */
     public static List<AoiInfo> getAllAois() {
+        // The live registry already knows every AOI
+        AoiRegistry registry = AoiRegistry.getInstance();
+        if (registry != null) {
+            long start = System.nanoTime();
+            List<AoiInfo> aois = registry.snapshot();
+            PluginMetrics.AOI_TRAVERSAL.recordSince(start);
+            return aois;
+        }
+
         List<AoiInfo> aois = new ArrayList<>();
         MapView mapView = MapView.getMapView();
         if (mapView == null) {
@@ -43,9 +59,13 @@ public class AoiManager {
                 return aois;
             }
 
-            // Recursively find all shapes
-            findShapesInGroup(rootGroup, aois);
-            
+            // Walk the map tree once collecting all shapes
+            AoiCollector collector = new AoiCollector();
+            MapModelTraversal.Report report = MapTraversal.walk(rootGroup, collector);
+            PluginMetrics.AOI_TRAVERSAL.record(report.getTotalNanos());
+            aois = collector.getAois();
+            retainMeasurements(aois);
+
             Log.d(TAG, "Found " + aois.size() + " AOI shapes on map");
         } catch (Exception e) {
             Log.e(TAG, "Error getting AOIs", e);
@@ -55,31 +75,33 @@ public class AoiManager {
     }
 
     /**
-     * Recursively search for shapes in a map group and its children
+     * Traversal collector that gathers every supported shape as an AOI
      */
-    private static void findShapesInGroup(MapGroup group, List<AoiInfo> aois) {
-        if (group == null) return;
+    public static class AoiCollector implements MapTraversal.Collector {
+        private final List<AoiInfo> aois = new ArrayList<>();
 
-        // Check all items in this group
-        Collection<MapItem> items = group.getItems();
-        for (MapItem item : items) {
+        @Override
+        public String getName() {
+            return "AOIs";
+        }
+
+        @Override
+        public void visit(MapItem item) {
             AoiInfo aoiInfo = createAoiInfo(item);
             if (aoiInfo != null) {
                 aois.add(aoiInfo);
             }
         }
 
-        // Recursively check child groups
-        Collection<MapGroup> childGroups = group.getChildGroups();
-        for (MapGroup childGroup : childGroups) {
-            findShapesInGroup(childGroup, aois);
+        public List<AoiInfo> getAois() {
+            return aois;
         }
     }
 
     /**
      * Create AoiInfo from a MapItem if it's a supported shape type
      */
-    private static AoiInfo createAoiInfo(MapItem item) {
+    static AoiInfo createAoiInfo(MapItem item) {
         if (item == null) return null;
 
         try {
@@ -88,36 +110,38 @@ public class AoiManager {
                 DrawingCircle circle = (DrawingCircle) item;
                 GeoPoint center = circle.getCenterPoint();
                 double radius = circle.getRadius();
-                double area = Math.PI * radius * radius; // Area of circle
+                AoiGeometry geometry = AoiGeometry.circle(item.getUID(),
+                        center.getLatitude(), center.getLongitude(), radius);
 
-                return new AoiInfo(item, "Circle", center, area);
+                // Closed form, nothing worth caching
+                return new AoiInfo(item, "Circle", center,
+                        GeodesicArea.circleArea(radius),
+                        GeodesicArea.circlePerimeter(radius), geometry);
             }
 
             // Check for DrawingRectangle
             if (item instanceof DrawingRectangle) {
                 DrawingRectangle rect = (DrawingRectangle) item;
                 GeoPoint center = rect.getCenter().get();
-                
-                // Calculate approximate area from bounds
-                GeoPoint[] points = rect.getPoints();
-                double area = calculatePolygonArea(points);
+                AoiMeasurementCache.Measurement measurement = measurementCache.get(rect);
 
-                return new AoiInfo(item, "Rectangle", center, area);
+                return new AoiInfo(item, "Rectangle", center, measurement.getArea(),
+                        measurement.getPerimeter(), measurement.getGeometry());
             }
 
             // Check for generic Shape (includes polygons, freehand, etc.)
             if (item instanceof Shape) {
                 Shape shape = (Shape) item;
                 GeoPoint center = shape.getCenter().get();
-                
-                // Get points and calculate area
-                GeoPoint[] points = shape.getPoints();
-                double area = calculatePolygonArea(points);
+
+                // Points are only read when the shape is new or has changed
+                AoiMeasurementCache.Measurement measurement = measurementCache.get(shape);
 
                 // Determine shape type from metadata or type string
                 String shapeType = determineShapeType(shape);
 
-                return new AoiInfo(item, shapeType, center, area);
+                return new AoiInfo(item, shapeType, center, measurement.getArea(),
+                        measurement.getPerimeter(), measurement.getGeometry());
             }
 
         } catch (Exception e) {
@@ -128,50 +152,82 @@ public class AoiManager {
     }
 
     /**
-     * Determine the specific type of shape
+     * Drop cached measurements of shapes that are no longer on the map
+     * @param aois Every AOI currently on the map
      */
-    private static String determineShapeType(Shape shape) {
-        String type = shape.getType();
-        
-        if (type != null) {
-            if (type.contains("u-d-r")) return "Rectangle";
-            if (type.contains("u-d-c-c")) return "Circle";
-            if (type.contains("u-d-f")) return "Freehand";
-            if (type.contains("shape")) return "Polygon";
+    public static void retainMeasurements(List<AoiInfo> aois) {
+        Set<String> uids = new HashSet<>(aois.size() * 2);
+        for (AoiInfo aoi : aois) {
+            uids.add(aoi.getUid());
         }
+        measurementCache.retain(uids);
+    }
 
-        // Fallback to checking metadata
-        String metaType = shape.getMetaString("shapeType", null);
-        if (metaType != null) return metaType;
-
-        return "Polygon";
+    /**
+     * Drop the cached measurements of a shape removed from the map
+     */
+    static void forgetMeasurement(String uid) {
+        measurementCache.remove(uid);
     }
 
     /**
-     * Calculate area of polygon using shoelace formula (approximate for geographic coordinates)
+     * Build a spatial index over AOIs and make it the current index
+     * @param aois AOIs to index
+     * @return The new index
      */
-    private static double calculatePolygonArea(GeoPoint[] points) {
-        if (points == null || points.length < 3) return 0.0;
-
-        double area = 0.0;
-        int n = points.length;
-
-        for (int i = 0; i < n; i++) {
-            GeoPoint p1 = points[i];
-            GeoPoint p2 = points[(i + 1) % n];
-            
-            // Convert to approximate meters using Haversine-like calculation
-            // This is a simplified calculation - for precise areas, use proper geographic projection
-            double lat1 = Math.toRadians(p1.getLatitude());
-            double lat2 = Math.toRadians(p2.getLatitude());
-            double lon1 = Math.toRadians(p1.getLongitude());
-            double lon2 = Math.toRadians(p2.getLongitude());
-            
-            area += (lon2 - lon1) * (2 + Math.sin(lat1) + Math.sin(lat2));
+    public static AoiSpatialIndex<AoiInfo> updateSpatialIndex(List<AoiInfo> aois) {
+        List<AoiGeometry> geometries = new ArrayList<>(aois.size());
+        for (AoiInfo aoi : aois) {
+            geometries.add(aoi.getGeometry());
         }
 
-        area = Math.abs(area * 6378137.0 * 6378137.0 / 2.0); // Earth radius squared
-        return area;
+        AoiSpatialIndex<AoiInfo> index = AoiSpatialIndex.build(geometries, aois);
+        spatialIndex = index;
+
+        // Keep the per-AOI affiliation counts in step with the AOIs
+        AoiAffiliationJoin join = AoiAffiliationJoin.getInstance();
+        if (join != null) {
+            join.setIndex(index);
+        }
+        Trace.record(Trace.INFO, Trace.SPATIAL_INDEX_BUILT, index.size(), index.getDepth());
+        return index;
+    }
+
+    /**
+     * Get the current spatial index, building it from the map if needed
+     */
+    public static AoiSpatialIndex<AoiInfo> getSpatialIndex() {
+        AoiSpatialIndex<AoiInfo> index = spatialIndex;
+        if (index != null) return index;
+
+        // Reading from the registry builds the index as a side effect
+        List<AoiInfo> aois = getAllAois();
+        index = spatialIndex;
+        return index != null ? index : updateSpatialIndex(aois);
+    }
+
+    /**
+     * Find all AOIs containing a point
+     * @param point Point to test
+     * @return AOIs whose shape contains the point
+     */
+    public static List<AoiInfo> findContainingAois(GeoPoint point) {
+        if (point == null) return new ArrayList<>();
+        return getSpatialIndex().findContaining(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Determine the specific type of shape
+     */
+    private static String determineShapeType(Shape shape) {
+        String shapeKind = CotTypeCodec.describe(shape.getType()).getShapeKind();
+        if (shapeKind != null) return shapeKind;
+
+        // Fallback to checking metadata
+        String metaType = shape.getMetaString("shapeType", null);
+        if (metaType != null) return metaType;
+
+        return "Polygon";
     }
 
     /**
@@ -0,0 +1,192 @@
+package com.atakmap.android.omnicot.plugin;
+
+import com.atakmap.android.maps.Shape;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the geodesic area, perimeter and containment geometry of polygon
+ * shapes by UID. An entry is dropped as soon as its shape's points change,
+ * so shapes that have not changed are never measured twice.
+ */
+public class AoiMeasurementCache implements Shape.OnPointsChangedListener {
+
+    /**
+     * Measurements of a single shape
+     */
+    public static class Measurement {
+        private final double area;
+        private final double perimeter;
+        private final AoiGeometry geometry;
+
+        Measurement(double area, double perimeter, AoiGeometry geometry) {
+            this.area = area;
+            this.perimeter = perimeter;
+            this.geometry = geometry;
+        }
+
+        /**
+         * Area in square meters
+         */
+        public double getArea() {
+            return area;
+        }
+
+        /**
+         * Perimeter in meters
+         */
+        public double getPerimeter() {
+            return perimeter;
+        }
+
+        /**
+         * Geometry for containment queries, null for degenerate shapes
+         */
+        public AoiGeometry getGeometry() {
+            return geometry;
+        }
+    }
+
+    private static class Entry {
+        final Shape shape;
+        final Measurement measurement;
+
+        Entry(Shape shape, Measurement measurement) {
+            this.shape = shape;
+            this.measurement = measurement;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Shapes this cache listens to, by UID. Kept apart from the entries,
+    // which come and go with every points change, so a shape is only ever
+    // registered once.
+    private final Map<String, Shape> watched = new HashMap<>();
+
+    // Bumped on every invalidation so a measurement racing with a points
+    // change is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Get the measurements of a polygon shape, computing them only if the
+     * shape is new or its points changed since it was last measured
+     */
+    public Measurement get(Shape shape) {
+        String uid = shape.getUID();
+        Entry entry = entries.get(uid);
+        if (entry != null && entry.shape == shape) {
+            synchronized (this) {
+                hits++;
+            }
+            return entry.measurement;
+        }
+
+        synchronized (this) {
+            misses++;
+        }
+        // Listen before reading the points so a change during measuring is seen
+        watch(uid, shape);
+        long stamp = invalidations.get();
+        Measurement measurement = measure(uid, shape.getPoints());
+
+        if (invalidations.get() == stamp) {
+            entries.put(uid, new Entry(shape, measurement));
+        }
+        return measurement;
+    }
+
+    /**
+     * Listen to a shape's point changes unless already listening
+     */
+    private synchronized void watch(String uid, Shape shape) {
+        Shape previous = watched.put(uid, shape);
+        if (previous == shape) return;
+
+        // A new shape object for the same UID replaces the old one
+        if (previous != null) {
+            previous.removeOnPointsChangedListener(this);
+        }
+        shape.addOnPointsChangedListener(this);
+    }
+
+    @Override
+    public void onPointsChanged(Shape shape) {
+        invalidations.incrementAndGet();
+        entries.remove(shape.getUID());
+    }
+
+    /**
+     * Drop entries for shapes that are no longer on the map
+     * @param uids UIDs of the shapes to keep
+     */
+    public void retain(Collection<String> uids) {
+        Set<String> keep = uids instanceof Set ? (Set<String>) uids : new HashSet<>(uids);
+        entries.keySet().retainAll(keep);
+        synchronized (this) {
+            Iterator<Map.Entry<String, Shape>> it = watched.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Shape> e = it.next();
+                if (!keep.contains(e.getKey())) {
+                    e.getValue().removeOnPointsChangedListener(this);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the entry of a single shape
+     */
+    public void remove(String uid) {
+        entries.remove(uid);
+        synchronized (this) {
+            Shape shape = watched.remove(uid);
+            if (shape != null) {
+                shape.removeOnPointsChangedListener(this);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Measure a polygon from its points
+     */
+    static Measurement measure(String uid, GeoPoint[] points) {
+        if (points == null || points.length < 3) {
+            return new Measurement(0.0, 0.0, null);
+        }
+
+        double[] lats = new double[points.length];
+        double[] lons = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            lats[i] = points[i].getLatitude();
+            lons[i] = points[i].getLongitude();
+        }
+        return new Measurement(GeodesicArea.polygonArea(lats, lons),
+                GeodesicArea.polygonPerimeter(lats, lons),
+                AoiGeometry.polygon(uid, lats, lons));
+    }
+}
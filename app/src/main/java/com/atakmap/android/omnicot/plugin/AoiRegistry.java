@@ -0,0 +1,311 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapItem;
+import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.Shape;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Live, UID-keyed set of the AOIs on the map. Every map group is watched for
+ * shapes being added or removed and every shape for its points or name
+ * changing, so
+ * reading the AOIs only rebuilds the ones that changed instead of walking
+ * every item on the map.
+ */
+public class AoiRegistry implements MapGroup.OnItemListChangedListener,
+        MapGroup.OnGroupListChangedListener, Shape.OnPointsChangedListener,
+        MapItem.OnMetadataChangedListener {
+    private static final String TAG = "AoiRegistry";
+
+    // Metadata an AOI's name is read from
+    private static final String[] NAME_FIELDS = {"callsign", "title"};
+
+    private static AoiRegistry instance;
+
+    private final Set<MapGroup> watchedGroups = new HashSet<>();
+    private final Map<String, Shape> shapes = new LinkedHashMap<>();
+    private final Map<String, AoiInfo> aois = new LinkedHashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+
+    // Bumped on every change so the spatial index is only rebuilt when needed
+    private long version;
+    private long indexedVersion = -1;
+
+    /**
+     * Get the running instance, or null if the registry is not started
+     */
+    public static synchronized AoiRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start tracking the AOIs on the current map
+     * @return The running instance, or null if the map is not available
+     */
+    public static synchronized AoiRegistry start() {
+        if (instance != null) return instance;
+
+        MapView mapView = MapView.getMapView();
+        if (mapView == null) {
+            Log.w(TAG, "MapView is null");
+            return null;
+        }
+
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup == null) {
+            Log.w(TAG, "Root group is null");
+            return null;
+        }
+
+        AoiRegistry registry = new AoiRegistry();
+        registry.watch(rootGroup);
+        Log.d(TAG, "Watching " + registry.watchedGroups.size() + " groups, "
+                + registry.shapes.size() + " shapes");
+        instance = registry;
+        return registry;
+    }
+
+    /**
+     * Stop tracking and release all map listeners
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.release();
+            instance = null;
+        }
+    }
+
+    /**
+     * Get the current AOIs, measuring only shapes that are new or changed.
+     * The AOI spatial index is rebuilt as well if anything changed.
+     * @return A new list the caller may keep
+     */
+    public List<AoiInfo> snapshot() {
+        // Take the changed shapes out under the lock
+        Map<String, Shape> changed;
+        long seenVersion;
+        synchronized (this) {
+            changed = new LinkedHashMap<>();
+            for (String uid : dirty) {
+                changed.put(uid, shapes.get(uid));
+            }
+            dirty.clear();
+            seenVersion = version;
+        }
+
+        // Measure without it so map callbacks on the UI thread are not held up
+        Map<String, AoiInfo> measured = new LinkedHashMap<>();
+        for (Map.Entry<String, Shape> entry : changed.entrySet()) {
+            Shape shape = entry.getValue();
+            measured.put(entry.getKey(), shape != null ? AoiManager.createAoiInfo(shape) : null);
+        }
+
+        List<AoiInfo> snapshot;
+        boolean reindex;
+        synchronized (this) {
+            for (Map.Entry<String, AoiInfo> entry : measured.entrySet()) {
+                String uid = entry.getKey();
+
+                // Changed, replaced or removed while measuring, so the result is
+                // stale; a replaced or changed shape is dirty again
+                if (dirty.contains(uid) || shapes.get(uid) != changed.get(uid)) continue;
+
+                AoiInfo aoiInfo = entry.getValue();
+                if (aoiInfo != null) {
+                    aois.put(uid, aoiInfo);
+                } else {
+                    aois.remove(uid);
+                }
+            }
+            snapshot = new ArrayList<>(aois.values());
+
+            // Changes made while measuring are left for the next snapshot
+            reindex = seenVersion != indexedVersion;
+            indexedVersion = seenVersion;
+        }
+
+        if (reindex) {
+            AoiManager.updateSpatialIndex(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Number of shapes being tracked
+     */
+    public synchronized int size() {
+        return shapes.size();
+    }
+
+    @Override
+    public void onItemAdded(MapItem item, MapGroup group) {
+        if (item instanceof Shape) {
+            synchronized (this) {
+                track((Shape) item);
+            }
+        }
+    }
+
+    @Override
+    public void onItemRemoved(MapItem item, MapGroup group) {
+        if (item instanceof Shape) {
+            synchronized (this) {
+                untrack((Shape) item);
+            }
+        }
+    }
+
+    @Override
+    public void onGroupAdded(MapGroup group, MapGroup parent) {
+        watch(group);
+    }
+
+    @Override
+    public void onGroupRemoved(MapGroup group, MapGroup parent) {
+        unwatch(group);
+    }
+
+    @Override
+    public void onPointsChanged(Shape shape) {
+        markDirty(shape);
+    }
+
+    @Override
+    public void onMetadataChanged(MapItem item, String field) {
+        // A renamed AOI needs a new AoiInfo for its name
+        markDirty(item);
+    }
+
+    private synchronized void markDirty(MapItem item) {
+        if (shapes.get(item.getUID()) == item) {
+            dirty.add(item.getUID());
+            version++;
+        }
+    }
+
+    /**
+     * Watch a group and everything below it
+     */
+    private synchronized void watch(MapGroup group) {
+        Deque<MapGroup> stack = new ArrayDeque<>();
+        stack.push(group);
+        while (!stack.isEmpty()) {
+            MapGroup current = stack.pop();
+            if (!watchedGroups.add(current)) continue;
+
+            current.addOnItemListChangedListener(this);
+            current.addOnGroupListChangedListener(this);
+
+            Collection<MapItem> items = current.getItems();
+            if (items != null) {
+                for (MapItem item : items) {
+                    if (item instanceof Shape) {
+                        track((Shape) item);
+                    }
+                }
+            }
+
+            Collection<MapGroup> children = current.getChildGroups();
+            if (children != null) {
+                for (MapGroup child : children) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop watching a group and everything below it, dropping its shapes
+     */
+    private synchronized void unwatch(MapGroup group) {
+        Deque<MapGroup> stack = new ArrayDeque<>();
+        stack.push(group);
+        while (!stack.isEmpty()) {
+            MapGroup current = stack.pop();
+            if (!watchedGroups.remove(current)) continue;
+
+            current.removeOnItemListChangedListener(this);
+            current.removeOnGroupListChangedListener(this);
+
+            Collection<MapItem> items = current.getItems();
+            if (items != null) {
+                for (MapItem item : items) {
+                    if (item instanceof Shape) {
+                        untrack((Shape) item);
+                    }
+                }
+            }
+
+            Collection<MapGroup> children = current.getChildGroups();
+            if (children != null) {
+                for (MapGroup child : children) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    private void track(Shape shape) {
+        String uid = shape.getUID();
+        Shape previous = shapes.put(uid, shape);
+        if (previous == shape) return;
+
+        if (previous != null) {
+            removeListeners(previous);
+        }
+        shape.addOnPointsChangedListener(this);
+        for (String field : NAME_FIELDS) {
+            shape.addOnMetadataChangedListener(field, this);
+        }
+        dirty.add(uid);
+        version++;
+    }
+
+    private void untrack(Shape shape) {
+        String uid = shape.getUID();
+        if (shapes.get(uid) != shape) return;
+
+        shapes.remove(uid);
+        removeListeners(shape);
+        aois.remove(uid);
+        dirty.remove(uid);
+        AoiManager.forgetMeasurement(uid);
+        version++;
+    }
+
+    private synchronized void release() {
+        for (MapGroup group : watchedGroups) {
+            group.removeOnItemListChangedListener(this);
+            group.removeOnGroupListChangedListener(this);
+        }
+        watchedGroups.clear();
+
+        Iterator<Shape> it = shapes.values().iterator();
+        while (it.hasNext()) {
+            removeListeners(it.next());
+            it.remove();
+        }
+        aois.clear();
+        dirty.clear();
+    }
+
+    private void removeListeners(Shape shape) {
+        shape.removeOnPointsChangedListener(this);
+        for (String field : NAME_FIELDS) {
+            shape.removeOnMetadataChangedListener(field, this);
+        }
+    }
+}
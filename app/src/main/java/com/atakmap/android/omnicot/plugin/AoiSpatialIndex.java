@@ -0,0 +1,209 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read-only R-tree over AOI bounding boxes, bulk loaded with the
+ * Sort-Tile-Recursive (STR) algorithm. Candidates found through the tree
+ * are refined with an exact containment test, so a point query touches
+ * O(log n) nodes plus the AOIs that actually overlap the point.
+ * @param <T> Value stored with each geometry
+ */
+public class AoiSpatialIndex<T> {
+    private static final int NODE_CAPACITY = 16;
+
+    /**
+     * Tree node; leaves reference entries, inner nodes reference child nodes
+     */
+    private static class Node {
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        Node[] children;
+        int[] entries;
+
+        void include(double minLat, double maxLat, double minLon, double maxLon) {
+            this.minLat = Math.min(this.minLat, minLat);
+            this.maxLat = Math.max(this.maxLat, maxLat);
+            this.minLon = Math.min(this.minLon, minLon);
+            this.maxLon = Math.max(this.maxLon, maxLon);
+        }
+
+        boolean contains(double lat, double lon) {
+            return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+        }
+
+        double centerLat() {
+            return (minLat + maxLat) / 2.0;
+        }
+
+        double centerLon() {
+            return (minLon + maxLon) / 2.0;
+        }
+    }
+
+    private final AoiGeometry[] geometries;
+    private final Object[] values;
+    private final Node root;
+    private final int depth;
+
+    private AoiSpatialIndex(AoiGeometry[] geometries, Object[] values, Node root, int depth) {
+        this.geometries = geometries;
+        this.values = values;
+        this.root = root;
+        this.depth = depth;
+    }
+
+    /**
+     * Bulk load an index
+     * @param geometries Geometries to index, null entries are skipped
+     * @param values Value for each geometry, in the same order
+     */
+    public static <T> AoiSpatialIndex<T> build(List<AoiGeometry> geometries, List<T> values) {
+        if (geometries.size() != values.size()) {
+            throw new IllegalArgumentException("Geometry and value counts differ");
+        }
+
+        List<AoiGeometry> geometryList = new ArrayList<>(geometries.size());
+        List<Object> valueList = new ArrayList<>(values.size());
+        for (int i = 0; i < geometries.size(); i++) {
+            if (geometries.get(i) != null) {
+                geometryList.add(geometries.get(i));
+                valueList.add(values.get(i));
+            }
+        }
+
+        AoiGeometry[] geometryArray = geometryList.toArray(new AoiGeometry[0]);
+        Object[] valueArray = valueList.toArray();
+        if (geometryArray.length == 0) {
+            return new AoiSpatialIndex<>(geometryArray, valueArray, null, 0);
+        }
+
+        // Leaf level: one single-entry node per geometry, then pack upwards
+        Node[] level = new Node[geometryArray.length];
+        for (int i = 0; i < geometryArray.length; i++) {
+            AoiGeometry g = geometryArray[i];
+            Node leaf = new Node();
+            leaf.entries = new int[] { i };
+            leaf.include(g.getMinLat(), g.getMaxLat(), g.getMinLon(), g.getMaxLon());
+            level[i] = leaf;
+        }
+        level = pack(level, true);
+        int depth = 1;
+
+        while (level.length > 1) {
+            level = pack(level, false);
+            depth++;
+        }
+
+        return new AoiSpatialIndex<>(geometryArray, valueArray, level[0], depth);
+    }
+
+    /**
+     * Pack one level of nodes into parents using Sort-Tile-Recursive
+     * @param mergeLeaves true to merge single-entry leaves into full leaves
+     */
+    private static Node[] pack(Node[] nodes, boolean mergeLeaves) {
+        int parentCount = (nodes.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+
+        // Sort into vertical slices by longitude, then each slice by latitude
+        Arrays.sort(nodes, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return Double.compare(a.centerLon(), b.centerLon());
+            }
+        });
+        for (int start = 0; start < nodes.length; start += sliceSize) {
+            int end = Math.min(nodes.length, start + sliceSize);
+            Arrays.sort(nodes, start, end, new Comparator<Node>() {
+                @Override
+                public int compare(Node a, Node b) {
+                    return Double.compare(a.centerLat(), b.centerLat());
+                }
+            });
+        }
+
+        List<Node> parents = new ArrayList<>(parentCount);
+        for (int sliceStart = 0; sliceStart < nodes.length; sliceStart += sliceSize) {
+            int sliceEnd = Math.min(nodes.length, sliceStart + sliceSize);
+            for (int start = sliceStart; start < sliceEnd; start += NODE_CAPACITY) {
+                int end = Math.min(sliceEnd, start + NODE_CAPACITY);
+                Node parent = new Node();
+                if (mergeLeaves) {
+                    parent.entries = new int[end - start];
+                } else {
+                    parent.children = new Node[end - start];
+                }
+                for (int i = start; i < end; i++) {
+                    Node child = nodes[i];
+                    if (mergeLeaves) {
+                        parent.entries[i - start] = child.entries[0];
+                    } else {
+                        parent.children[i - start] = child;
+                    }
+                    parent.include(child.minLat, child.maxLat, child.minLon, child.maxLon);
+                }
+                parents.add(parent);
+            }
+        }
+        return parents.toArray(new Node[0]);
+    }
+
+    /**
+     * Find the values of all AOIs containing a point
+     */
+    public List<T> findContaining(double lat, double lon) {
+        List<T> result = new ArrayList<>();
+        findContaining(lat, lon, result);
+        return result;
+    }
+
+    /**
+     * Find the values of all AOIs containing a point, adding them to a caller
+     * supplied list to avoid allocating on hot paths
+     */
+    @SuppressWarnings("unchecked")
+    public void findContaining(double lat, double lon, List<? super T> out) {
+        if (root == null || !root.contains(lat, lon)) return;
+
+        Node[] stack = new Node[depth * NODE_CAPACITY + 1];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            Node node = stack[--top];
+            if (node.entries != null) {
+                for (int entry : node.entries) {
+                    if (geometries[entry].contains(lat, lon)) {
+                        out.add((T) values[entry]);
+                    }
+                }
+            } else {
+                for (Node child : node.children) {
+                    if (child.contains(lat, lon)) {
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of indexed AOIs
+     */
+    public int size() {
+        return geometries.length;
+    }
+
+    /**
+     * Number of levels in the tree, 0 when empty
+     */
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,87 @@
+package com.atakmap.android.omnicot.plugin;
+
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapItem;
+import com.atakmap.android.maps.Marker;
+import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.android.maps.Shape;
+import com.atakmap.coremap.maps.coords.GeoPoint;
+
+import java.util.Collection;
+
+/**
+ * {@link MapModel} over the live ATAK map groups and items
+ */
+public final class AtakMapModel implements MapModel<MapGroup, MapItem> {
+
+    public static final AtakMapModel INSTANCE = new AtakMapModel();
+
+    private AtakMapModel() {
+    }
+
+    @Override
+    public Collection<MapGroup> getChildGroups(MapGroup group) {
+        return group.getChildGroups();
+    }
+
+    @Override
+    public Collection<MapItem> getItems(MapGroup group) {
+        return group.getItems();
+    }
+
+    @Override
+    public String getUid(MapItem item) {
+        return item.getUID();
+    }
+
+    @Override
+    public String getType(MapItem item) {
+        return item.getType();
+    }
+
+    @Override
+    public boolean isMarker(MapItem item) {
+        return item instanceof Marker;
+    }
+
+    @Override
+    public boolean isShape(MapItem item) {
+        return item instanceof Shape;
+    }
+
+    @Override
+    public boolean isMarkedUpdated(MapItem item) {
+        return CotStatistics.isMarkedUpdated(item);
+    }
+
+    @Override
+    public double getLatitude(MapItem item) {
+        GeoPoint point = getPoint(item);
+        return point != null ? point.getLatitude() : Double.NaN;
+    }
+
+    @Override
+    public double getLongitude(MapItem item) {
+        GeoPoint point = getPoint(item);
+        return point != null ? point.getLongitude() : Double.NaN;
+    }
+
+    @Override
+    public double[] getShapeCoordinates(MapItem item) {
+        if (!(item instanceof Shape)) return null;
+
+        GeoPoint[] points = ((Shape) item).getPoints();
+        if (points == null) return null;
+
+        double[] coordinates = new double[points.length * 2];
+        for (int i = 0; i < points.length; i++) {
+            coordinates[i * 2] = points[i].getLatitude();
+            coordinates[i * 2 + 1] = points[i].getLongitude();
+        }
+        return coordinates;
+    }
+
+    private static GeoPoint getPoint(MapItem item) {
+        return item instanceof PointMapItem ? ((PointMapItem) item).getPoint() : null;
+    }
+}
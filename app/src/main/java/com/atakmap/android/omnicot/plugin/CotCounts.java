@@ -0,0 +1,162 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.Collections;
+
+/**
+ * CoT counters by affiliation and update state, counted from any
+ * {@link MapModel}. Uses no Android or ATAK classes, so the counting can
+ * be exercised against generated maps on a plain JVM.
+ */
+public class CotCounts {
+
+    private int totalCot = 0;
+    private int updatedCot = 0;
+    private int teamUpdatedCot = 0;
+    private int unknownCount = 0;
+    private int neutralCount = 0;
+    private int friendlyCount = 0;
+    private int hostileCount = 0;
+
+    /**
+     * Count every item of a map model, e.g. a simulated map
+     * @param model Model to read
+     * @param root Group to start from
+     */
+    public static <G, I> CotCounts count(MapModel<G, I> model, G root) {
+        CotCounts counts = new CotCounts();
+        MapModelTraversal.walk(model, root,
+                Collections.singletonList(counts.visitorFor(model)));
+        return counts;
+    }
+
+    /**
+     * Visitor that counts a model's items into these counters
+     */
+    public <I> MapModelTraversal.Visitor<I> visitorFor(final MapModel<?, I> model) {
+        return new MapModelTraversal.Visitor<I>() {
+            @Override
+            public String getName() {
+                return "CotStatistics";
+            }
+
+            @Override
+            public void visit(I item) {
+                countItem(model, item);
+            }
+        };
+    }
+
+    /**
+     * Count a single item of any map model
+     */
+    <I> void countItem(MapModel<?, I> model, I item) {
+        // Only count markers (CoT items)
+        if (item == null || !model.isMarker(item)) return;
+
+        String type = getCountableType(model.getType(item));
+        if (type == null) return;
+
+        // Check if this item was updated by OmniCOT
+        count(type.charAt(2), model.isMarkedUpdated(item), 1);
+    }
+
+    /**
+     * Get a CoT type back if it should be counted, null otherwise
+     */
+    static String getCountableType(String type) {
+        // Parsed once per distinct type and cached
+        CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe(type);
+        if (!descriptor.isValid()) return null;
+
+        // Ignore certain types (like drawing tools, routes, etc.)
+        if (descriptor.isNonCot()) return null;
+
+        return descriptor.getType();
+    }
+
+    /**
+     * Add (delta = 1) or remove (delta = -1) a counted item from the totals
+     */
+    void count(char affiliation, boolean updated, int delta) {
+        totalCot += delta;
+        if (updated) {
+            updatedCot += delta;
+        }
+
+        // Count by affiliation (character at index 2 in CoT type)
+        switch (affiliation) {
+            case 'u':
+                unknownCount += delta;
+                break;
+            case 'n':
+                neutralCount += delta;
+                break;
+            case 'f':
+                friendlyCount += delta;
+                break;
+            case 'h':
+                hostileCount += delta;
+                break;
+        }
+    }
+
+    /**
+     * Adjust only the updated counter, used when an already counted item gets marked
+     */
+    void countUpdated(int delta) {
+        updatedCot += delta;
+    }
+
+    /**
+     * Adjust the count of items whose affiliation a teammate changed
+     */
+    void countTeamUpdated(int delta) {
+        teamUpdatedCot += delta;
+    }
+
+    /**
+     * Copy every counter from another instance
+     */
+    void copyFrom(CotCounts other) {
+        totalCot = other.totalCot;
+        updatedCot = other.updatedCot;
+        teamUpdatedCot = other.teamUpdatedCot;
+        unknownCount = other.unknownCount;
+        neutralCount = other.neutralCount;
+        friendlyCount = other.friendlyCount;
+        hostileCount = other.hostileCount;
+    }
+
+    // Getters
+    public int getTotalCot() {
+        return totalCot;
+    }
+
+    public int getUpdatedCot() {
+        return updatedCot;
+    }
+
+    /**
+     * Items whose affiliation was changed by a teammate's CoT message. Only
+     * known while live statistics are running; a full scan reports 0.
+     */
+    public int getTeamUpdatedCot() {
+        return teamUpdatedCot;
+    }
+
+    public int getUnknownCount() {
+        return unknownCount;
+    }
+
+    public int getNeutralCount() {
+        return neutralCount;
+    }
+
+    public int getFriendlyCount() {
+        return friendlyCount;
+    }
+
+    public int getHostileCount() {
+        return hostileCount;
+    }
+}
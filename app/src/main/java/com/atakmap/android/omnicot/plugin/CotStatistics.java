@@ -7,21 +7,12 @@ import com.atakmap.android.maps.MapItem;
 import com.atakmap.android.maps.MapView;
 import com.atakmap.android.maps.Marker;
 
-import java.util.Collection;
-
 /**
  * Tracks and calculates statistics about Cursor on Target (CoT) items
  */
-public class CotStatistics {
+public class CotStatistics extends CotCounts implements MapTraversal.Collector {
     private static final String TAG = "CotStatistics";
-    private static final String OMNICOT_UPDATED_KEY = "omnicot_updated";
-    
-    private int totalCot = 0;
-    private int updatedCot = 0;
-    private int unknownCount = 0;
-    private int neutralCount = 0;
-    private int friendlyCount = 0;
-    private int hostileCount = 0;
+    static final String OMNICOT_UPDATED_KEY = "omnicot_updated";
 
     /**
      * Calculate statistics from all CoT items on the map
@@ -38,12 +29,14 @@ public class CotStatistics {
         try {
             MapGroup rootGroup = mapView.getRootGroup();
             if (rootGroup != null) {
-                stats.processMapGroup(rootGroup);
+                MapModelTraversal.Report report = MapTraversal.walk(rootGroup, stats);
+                PluginMetrics.STATISTICS_TRAVERSAL.record(report.getTotalNanos());
+                Trace.record(Trace.INFO, Trace.STATISTICS_CALCULATED,
+                        stats.getTotalCot(), stats.getUpdatedCot(), report.getTotalNanos());
             }
-            
-            Log.d(TAG, String.format("CoT Statistics - Total: %d, Updated: %d, U:%d, N:%d, F:%d, H:%d",
-                    stats.totalCot, stats.updatedCot, stats.unknownCount, 
-                    stats.neutralCount, stats.friendlyCount, stats.hostileCount));
+
+            Trace.record(Trace.INFO, Trace.STATISTICS_AFFILIATIONS, stats.getUnknownCount(),
+                    stats.getNeutralCount(), stats.getFriendlyCount(), stats.getHostileCount());
         } catch (Exception e) {
             Log.e(TAG, "Error calculating CoT statistics", e);
         }
@@ -51,101 +44,49 @@ public class CotStatistics {
         return stats;
     }
 
-    /**
-     * Recursively process map groups to count CoT items
-     */
-    private void processMapGroup(MapGroup group) {
-        if (group == null) return;
-
-        // Process items in this group
-        Collection<MapItem> items = group.getItems();
-        for (MapItem item : items) {
-            processMapItem(item);
-        }
+    @Override
+    public String getName() {
+        return "CotStatistics";
+    }
 
-        // Recursively process child groups
-        Collection<MapGroup> childGroups = group.getChildGroups();
-        for (MapGroup childGroup : childGroups) {
-            processMapGroup(childGroup);
-        }
+    @Override
+    public void visit(MapItem item) {
+        processMapItem(item);
     }
 
     /**
      * Process a single map item and update statistics
      */
     private void processMapItem(MapItem item) {
-        if (item == null) return;
-
-        // Only count markers (CoT items)
-        if (!(item instanceof Marker)) return;
-
-        String type = item.getType();
-        if (type == null || type.length() < 3) return;
-
-        // Ignore certain types (like drawing tools, routes, etc.)
-        if (isNonCotType(type)) return;
-
-        totalCot++;
-
-        // Check if this item was updated by OmniCOT
-        boolean wasUpdated = item.getMetaBoolean(OMNICOT_UPDATED_KEY, false);
-        if (wasUpdated) {
-            updatedCot++;
-        }
-
-        // Count by affiliation (character at index 2 in CoT type)
-        char affiliation = type.charAt(2);
-        switch (affiliation) {
-            case 'u':
-                unknownCount++;
-                break;
-            case 'n':
-                neutralCount++;
-                break;
-            case 'f':
-                friendlyCount++;
-                break;
-            case 'h':
-                hostileCount++;
-                break;
-        }
+        countItem(AtakMapModel.INSTANCE, item);
     }
 
     /**
-     * Check if a type string represents a non-CoT item (drawing tools, etc.)
+     * Get the CoT type of an item if it should be counted, null otherwise
      */
-    private boolean isNonCotType(String type) {
-        // Exclude drawing tools and other non-CoT items
-        return type.startsWith("u-d-") || // Drawing tools
-               type.startsWith("b-m-p-s-p-loc") || // Route waypoints
-               type.startsWith("u-rb-") || // Radial menu items
-               type.contains("drawing") ||
-               type.contains("shape");
-    }
-
-    // Getters
-    public int getTotalCot() {
-        return totalCot;
-    }
-
-    public int getUpdatedCot() {
-        return updatedCot;
-    }
+    static String getCountableType(MapItem item) {
+        if (item == null) return null;
 
-    public int getUnknownCount() {
-        return unknownCount;
-    }
+        // Only count markers (CoT items)
+        if (!(item instanceof Marker)) return null;
 
-    public int getNeutralCount() {
-        return neutralCount;
+        return getCountableType(item.getType());
     }
 
-    public int getFriendlyCount() {
-        return friendlyCount;
+    /**
+     * Check if an item has been marked as updated by OmniCOT
+     */
+    static boolean isMarkedUpdated(MapItem item) {
+        return item != null && item.getMetaBoolean(OMNICOT_UPDATED_KEY, false);
     }
 
-    public int getHostileCount() {
-        return hostileCount;
+    /**
+     * Create an independent copy of these statistics
+     */
+    CotStatistics copy() {
+        CotStatistics copy = new CotStatistics();
+        copy.copyFrom(this);
+        return copy;
     }
 
     /**
@@ -154,7 +95,13 @@ public class CotStatistics {
     public static void markAsUpdated(MapItem item) {
         if (item != null) {
             item.setMetaBoolean(OMNICOT_UPDATED_KEY, true);
-            Log.d(TAG, "Marked item as updated: " + item.getUID());
+
+            // Meta changes do not raise map events, so tell the live counters directly
+            LiveCotStatistics live = LiveCotStatistics.getInstance();
+            if (live != null) {
+                live.onMarkedUpdated(item);
+            }
+            Trace.record(Trace.DEBUG, Trace.ITEM_MARKED_UPDATED, item.getUID().hashCode() & 0xffffffffL);
         }
     }
 }
@@ -0,0 +1,165 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses CoT type strings once into a {@link Descriptor} and caches the
+ * result. The number of distinct types on a map is small, so after warm-up
+ * classifying a marker is a single hash lookup with no allocation.
+ */
+public final class CotTypeCodec {
+
+    // Distinct types are few; if this is ever exceeded the cache starts over
+    static final int MAX_CACHED_TYPES = 1024;
+
+    private static final ConcurrentHashMap<String, Descriptor> cache =
+            new ConcurrentHashMap<>();
+
+    private static final Descriptor INVALID = new Descriptor("");
+
+    /** Affiliation codes with a cached rewritten type */
+    private static final String AFFILIATION_CODES = "unfh";
+
+    /**
+     * Everything the plugin needs to know about a CoT type
+     */
+    public static final class Descriptor {
+        private final String type;
+        private final boolean valid;
+        private final char affiliation;
+        private final char battleDimension;
+        private final boolean nonCot;
+        private final String shapeKind;
+
+        // Type with each of AFFILIATION_CODES swapped in, filled on demand
+        private final String[] affiliationVariants = new String[AFFILIATION_CODES.length()];
+
+        Descriptor(String type) {
+            this.type = type;
+            this.valid = type.length() >= 3;
+            this.affiliation = valid ? type.charAt(2) : 0;
+            this.battleDimension = type.length() > 4 && type.charAt(3) == '-'
+                    ? type.charAt(4) : 0;
+            this.nonCot = isNonCotType(type);
+            this.shapeKind = parseShapeKind(type);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * True if the type is long enough to carry an affiliation
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Affiliation character (index 2), or 0 for invalid types
+         */
+        public char getAffiliation() {
+            return affiliation;
+        }
+
+        /**
+         * Battle dimension character (index 4, e.g. 'G' for ground), or 0
+         */
+        public char getBattleDimension() {
+            return battleDimension;
+        }
+
+        /**
+         * True for drawing tools, route waypoints and other non-CoT items
+         */
+        public boolean isNonCot() {
+            return nonCot;
+        }
+
+        /**
+         * AOI shape kind implied by the type, or null if the type does not say
+         */
+        public String getShapeKind() {
+            return shapeKind;
+        }
+
+        /**
+         * Get this type with the affiliation character replaced
+         * @param code New affiliation character
+         * @return The rewritten type, or null if this type is invalid
+         */
+        public String withAffiliation(char code) {
+            if (!valid) return null;
+            if (code == affiliation) return type;
+
+            int slot = AFFILIATION_CODES.indexOf(code);
+            if (slot < 0) return rewrite(code);
+
+            String variant = affiliationVariants[slot];
+            if (variant == null) {
+                variant = rewrite(code);
+                affiliationVariants[slot] = variant;
+            }
+            return variant;
+        }
+
+        private String rewrite(char code) {
+            char[] typeChars = type.toCharArray();
+            typeChars[2] = code;
+            return new String(typeChars);
+        }
+    }
+
+    private CotTypeCodec() {
+    }
+
+    /**
+     * Get the descriptor for a type
+     * @param type CoT type, may be null
+     * @return The cached descriptor; null types give an invalid descriptor
+     */
+    public static Descriptor describe(String type) {
+        if (type == null) return INVALID;
+
+        Descriptor descriptor = cache.get(type);
+        if (descriptor == null) {
+            if (cache.size() >= MAX_CACHED_TYPES) {
+                cache.clear();
+            }
+            descriptor = new Descriptor(type);
+            Descriptor existing = cache.putIfAbsent(type, descriptor);
+            if (existing != null) descriptor = existing;
+        }
+        return descriptor;
+    }
+
+    /**
+     * Number of types currently cached
+     */
+    public static int getCachedTypeCount() {
+        return cache.size();
+    }
+
+    /**
+     * Check if a type string represents a non-CoT item (drawing tools, etc.)
+     */
+    static boolean isNonCotType(String type) {
+        // Exclude drawing tools and other non-CoT items
+        return type.startsWith("u-d-") || // Drawing tools
+               type.startsWith("b-m-p-s-p-loc") || // Route waypoints
+               type.startsWith("u-rb-") || // Radial menu items
+               type.contains("drawing") ||
+               type.contains("shape");
+    }
+
+    /**
+     * Determine the AOI shape kind from a type string
+     */
+    static String parseShapeKind(String type) {
+        if (type.contains("u-d-r")) return "Rectangle";
+        if (type.contains("u-d-c-c")) return "Circle";
+        if (type.contains("u-d-f")) return "Freehand";
+        if (type.contains("shape")) return "Polygon";
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts CoT types by every dash-separated prefix, e.g. one "a-h-G-E-V-A"
+ * counts towards "a", "a-h", "a-h-G" and so on. Adding or removing a type
+ * and reading any prefix count cost O(depth). Not thread-safe; callers
+ * hold their own lock.
+ */
+public class CotTypeTrie {
+
+    /**
+     * Count for one child segment of a prefix
+     */
+    public static class Entry {
+        private final String segment;
+        private final String prefix;
+        private final int count;
+
+        Entry(String segment, String prefix, int count) {
+            this.segment = segment;
+            this.prefix = prefix;
+            this.count = count;
+        }
+
+        /** The segment itself, e.g. "G" */
+        public String getSegment() {
+            return segment;
+        }
+
+        /** The full prefix ending in this segment, e.g. "a-h-G" */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        int count;
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * Count a type under all of its prefixes
+     */
+    public void add(String type) {
+        Node node = root;
+        node.count++;
+        int start = 0;
+        while (start <= type.length()) {
+            int end = segmentEnd(type, start);
+            String segment = type.substring(start, end);
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            child.count++;
+            node = child;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Remove a type counted earlier with add
+     */
+    public void remove(String type) {
+        // Guards against a type that was never added
+        if (count(type) == 0) return;
+
+        Node node = root;
+        node.count--;
+        int start = 0;
+        while (start <= type.length()) {
+            int end = segmentEnd(type, start);
+            String segment = type.substring(start, end);
+            Node child = node.children.get(segment);
+            if (--child.count == 0) {
+                // Nothing below is counted any more
+                node.children.remove(segment);
+                return;
+            }
+            node = child;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Number of counted types starting with a whole-segment prefix
+     * @param prefix e.g. "a-h-G", or "" for all types
+     */
+    public int count(String prefix) {
+        Node node = find(prefix);
+        return node != null ? node.count : 0;
+    }
+
+    /**
+     * Counts for each next segment below a prefix, largest first
+     * @param prefix e.g. "a-h", or "" for the first segments
+     */
+    public List<Entry> children(String prefix) {
+        if (prefix == null) prefix = "";
+        Node node = find(prefix);
+        if (node == null || node.children.isEmpty()) return Collections.emptyList();
+
+        List<Entry> entries = new ArrayList<>(node.children.size());
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            String segment = child.getKey();
+            String childPrefix = prefix.isEmpty() ? segment : prefix + "-" + segment;
+            entries.add(new Entry(segment, childPrefix, child.getValue().count));
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.count != b.count) return a.count > b.count ? -1 : 1;
+                return a.segment.compareTo(b.segment);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Number of types counted in total
+     */
+    public int size() {
+        return root.count;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        if (prefix == null || prefix.isEmpty()) return node;
+
+        int start = 0;
+        while (node != null && start <= prefix.length()) {
+            int end = segmentEnd(prefix, start);
+            node = node.children.get(prefix.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private static int segmentEnd(String type, int start) {
+        int end = type.indexOf('-', start);
+        return end < 0 ? type.length() : end;
+    }
+}
@@ -0,0 +1,146 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs dashboard scans on a dedicated background thread. Requests that arrive
+ * while a scan is queued are merged into it, results that were superseded by
+ * a newer request are dropped, and only the latest scan is posted back to the
+ * UI thread.
+ */
+public class DashboardRefresher {
+    private static final String TAG = "DashboardRefresher";
+
+    /** Refresh the CoT statistics */
+    public static final int REFRESH_STATISTICS = 1;
+    /** Refresh the AOI list */
+    public static final int REFRESH_AOIS = 2;
+    /** Refresh everything the dashboards show */
+    public static final int REFRESH_ALL = REFRESH_STATISTICS | REFRESH_AOIS;
+
+    /**
+     * Receives completed scans on the UI thread
+     */
+    public interface Listener {
+        void onDashboardScan(DashboardScan scan);
+    }
+
+    private final Listener listener;
+    private final ExecutorService executor;
+    private final AtomicInteger pendingFlags = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong requestedGeneration = new AtomicLong();
+    private volatile boolean shutdown;
+
+    private final Runnable scanTask = new Runnable() {
+        @Override
+        public void run() {
+            runScan();
+        }
+    };
+
+    public DashboardRefresher(Listener listener) {
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OmniCOT-dashboard");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Request a refresh. Cheap to call repeatedly; overlapping requests are
+     * merged into a single background scan.
+     * @param flags Combination of REFRESH_STATISTICS and REFRESH_AOIS
+     */
+    public void requestRefresh(int flags) {
+        if (shutdown) return;
+
+        addPendingFlags(flags);
+        requestedGeneration.incrementAndGet();
+        schedule();
+    }
+
+    /**
+     * Stop the background thread, dropping any queued work
+     */
+    public void shutdown() {
+        shutdown = true;
+        executor.shutdownNow();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(scanTask);
+            } catch (RejectedExecutionException e) {
+                Log.d(TAG, "Refresher is shut down");
+            }
+        }
+    }
+
+    private void addPendingFlags(int flags) {
+        int current;
+        do {
+            current = pendingFlags.get();
+        } while (!pendingFlags.compareAndSet(current, current | flags));
+    }
+
+    private void runScan() {
+        // Requests arriving from here on schedule another run
+        scheduled.set(false);
+        final int flags = pendingFlags.getAndSet(0);
+        final long generation = requestedGeneration.get();
+        if (flags == 0 || shutdown) return;
+
+        final DashboardScan scan;
+        try {
+            scan = DashboardScan.scan((flags & REFRESH_AOIS) != 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Error scanning dashboard data", e);
+            return;
+        }
+
+        if (isSuperseded(generation, flags)) return;
+
+        MapView mapView = MapView.getMapView();
+        if (mapView == null) return;
+
+        mapView.post(new Runnable() {
+            @Override
+            public void run() {
+                // A newer request may have come in while this was queued
+                if (shutdown || isSuperseded(generation, flags)) return;
+                listener.onDashboardScan(scan);
+            }
+        });
+    }
+
+    /**
+     * Check if a newer request has been made since a scan started. The
+     * dropped scan's work is handed over to the next run.
+     */
+    private boolean isSuperseded(long generation, int flags) {
+        if (requestedGeneration.get() == generation) return false;
+
+        // The newer run may already have taken its flags, so make sure a
+        // run is scheduled that covers what this scan was asked for
+        addPendingFlags(flags);
+        schedule();
+        Log.d(TAG, "Dropping superseded dashboard scan");
+        return true;
+    }
+}
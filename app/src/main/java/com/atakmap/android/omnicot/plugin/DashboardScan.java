@@ -0,0 +1,121 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Everything the dashboards show, gathered with a single walk of the map
+ */
+public class DashboardScan {
+    private static final String TAG = "DashboardScan";
+
+    private final CotStatistics statistics;
+    private final List<AoiInfo> aois;
+    private final MapModelTraversal.Report report;
+
+    private DashboardScan(CotStatistics statistics, List<AoiInfo> aois,
+                          MapModelTraversal.Report report) {
+        this.statistics = statistics;
+        this.aois = aois;
+        this.report = report;
+    }
+
+    /**
+     * Gather CoT statistics and AOIs
+     */
+    public static DashboardScan scan() {
+        return scan(true);
+    }
+
+    /**
+     * Gather dashboard data with at most one walk of the map. When live
+     * statistics and the AOI registry are both running the map is not
+     * walked at all.
+     * @param includeAois Whether AOIs should be collected
+     */
+    public static DashboardScan scan(boolean includeAois) {
+        LiveCotStatistics live = LiveCotStatistics.getInstance();
+        CotStatistics statistics = live != null ? live.snapshot() : new CotStatistics();
+        AoiRegistry registry = includeAois ? AoiRegistry.getInstance() : null;
+        List<AoiInfo> registeredAois = null;
+        if (registry != null) {
+            long start = System.nanoTime();
+            registeredAois = registry.snapshot();
+            PluginMetrics.AOI_TRAVERSAL.recordSince(start);
+        }
+
+        boolean walkStatistics = live == null;
+        boolean walkAois = includeAois && registeredAois == null;
+        if (!walkStatistics && !walkAois) {
+            return new DashboardScan(statistics, registeredAois, null);
+        }
+
+        MapView mapView = MapView.getMapView();
+        if (mapView == null) {
+            Log.w(TAG, "MapView is null");
+            return new DashboardScan(statistics, emptyAois(includeAois, registeredAois), null);
+        }
+
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup == null) {
+            Log.w(TAG, "Root group is null");
+            return new DashboardScan(statistics, emptyAois(includeAois, registeredAois), null);
+        }
+
+        AoiManager.AoiCollector aoiCollector = new AoiManager.AoiCollector();
+        MapModelTraversal.Report report;
+        if (walkStatistics && walkAois) {
+            report = MapTraversal.walk(rootGroup, aoiCollector, statistics);
+        } else if (walkStatistics) {
+            report = MapTraversal.walk(rootGroup, statistics);
+        } else {
+            report = MapTraversal.walk(rootGroup, aoiCollector);
+        }
+
+        Trace.record(Trace.INFO, Trace.DASHBOARD_TRAVERSAL, report.getItemCount(),
+                report.getGroupCount(), report.getTotalNanos());
+        if (walkStatistics && walkAois) {
+            // The walk is shared, so each histogram only gets its own collector's time
+            PluginMetrics.AOI_TRAVERSAL.record(report.getCollectorNanos(0));
+            PluginMetrics.STATISTICS_TRAVERSAL.record(report.getCollectorNanos(1));
+        } else if (walkStatistics) {
+            PluginMetrics.STATISTICS_TRAVERSAL.record(report.getTotalNanos());
+        } else {
+            PluginMetrics.AOI_TRAVERSAL.record(report.getTotalNanos());
+        }
+        if (walkAois) {
+            AoiManager.retainMeasurements(aoiCollector.getAois());
+            AoiManager.updateSpatialIndex(aoiCollector.getAois());
+            return new DashboardScan(statistics, aoiCollector.getAois(), report);
+        }
+        return new DashboardScan(statistics, registeredAois, report);
+    }
+
+    private static List<AoiInfo> emptyAois(boolean includeAois, List<AoiInfo> registeredAois) {
+        if (registeredAois != null) return registeredAois;
+        return includeAois ? new ArrayList<AoiInfo>() : null;
+    }
+
+    public CotStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * AOIs found on the map, or null if AOIs were not part of this scan
+     */
+    public List<AoiInfo> getAois() {
+        return aois;
+    }
+
+    /**
+     * Traversal report, or null if the map was not available
+     */
+    public MapModelTraversal.Report getReport() {
+        return report;
+    }
+}
@@ -0,0 +1,180 @@
+package com.atakmap.android.omnicot.plugin;
+
+/**
+ * Area and perimeter of shapes on the WGS84 ellipsoid.
+ *
+ * Polygon areas are computed on the authalic (equal-area) sphere: every
+ * latitude is mapped to its authalic latitude, which preserves area
+ * exactly, and the spherical excess of each edge is summed. Perimeters use
+ * Vincenty's inverse formula on the ellipsoid. Circles have closed forms.
+ */
+public final class GeodesicArea {
+
+    /** WGS84 semi-major axis in meters */
+    public static final double WGS84_A = 6378137.0;
+    /** WGS84 flattening */
+    public static final double WGS84_F = 1.0 / 298.257223563;
+
+    private static final double B = WGS84_A * (1.0 - WGS84_F);
+    private static final double E2 = WGS84_F * (2.0 - WGS84_F);
+    private static final double E = Math.sqrt(E2);
+
+    // q at the pole and the radius of the sphere with the ellipsoid's area
+    private static final double QP = q(1.0);
+    /** Authalic radius in meters */
+    public static final double AUTHALIC_RADIUS = WGS84_A * Math.sqrt(QP / 2.0);
+
+    private static final double EARTH_AREA = 4.0 * Math.PI * AUTHALIC_RADIUS * AUTHALIC_RADIUS;
+
+    private static final int VINCENTY_MAX_ITERATIONS = 200;
+    private static final double VINCENTY_TOLERANCE = 1e-12;
+
+    private GeodesicArea() {
+    }
+
+    /**
+     * Area of a polygon given by its vertices in degrees. The ring is
+     * closed implicitly and may wind either way.
+     * @return Area in square meters, 0 for fewer than 3 vertices
+     */
+    public static double polygonArea(double[] lats, double[] lons) {
+        int n = Math.min(lats.length, lons.length);
+        if (n < 3) return 0.0;
+
+        double excess = 0.0;
+        double prevTan = Math.tan(authalicLatitude(lats[n - 1]) / 2.0);
+        double prevLon = lons[n - 1];
+        for (int i = 0; i < n; i++) {
+            double tan = Math.tan(authalicLatitude(lats[i]) / 2.0);
+            double dLon = Math.toRadians(normalizeLongitude(lons[i] - prevLon));
+
+            // Signed spherical excess of the triangle edge-pole
+            excess += 2.0 * Math.atan2(Math.tan(dLon / 2.0) * (prevTan + tan),
+                    1.0 + prevTan * tan);
+
+            prevTan = tan;
+            prevLon = lons[i];
+        }
+
+        double area = Math.abs(excess) * AUTHALIC_RADIUS * AUTHALIC_RADIUS;
+
+        // A ring encircling a pole measures the other side of the globe
+        if (area > EARTH_AREA / 2.0) area = EARTH_AREA - area;
+        return area;
+    }
+
+    /**
+     * Perimeter of a closed polygon given by its vertices in degrees
+     * @return Perimeter in meters
+     */
+    public static double polygonPerimeter(double[] lats, double[] lons) {
+        int n = Math.min(lats.length, lons.length);
+        if (n < 2) return 0.0;
+
+        double perimeter = 0.0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            perimeter += distance(lats[i], lons[i], lats[j], lons[j]);
+        }
+        return perimeter;
+    }
+
+    /**
+     * Area of a geodesic circle, closed form on the authalic sphere
+     * @param radius Radius in meters
+     * @return Area in square meters
+     */
+    public static double circleArea(double radius) {
+        double r = AUTHALIC_RADIUS;
+        return 2.0 * Math.PI * r * r * (1.0 - Math.cos(radius / r));
+    }
+
+    /**
+     * Circumference of a geodesic circle on the authalic sphere
+     * @param radius Radius in meters
+     * @return Circumference in meters
+     */
+    public static double circlePerimeter(double radius) {
+        return 2.0 * Math.PI * AUTHALIC_RADIUS * Math.sin(radius / AUTHALIC_RADIUS);
+    }
+
+    /**
+     * Geodesic distance between two points on the ellipsoid (Vincenty
+     * inverse). Falls back to the authalic sphere for nearly antipodal
+     * points where the iteration does not converge.
+     * @return Distance in meters
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double l = Math.toRadians(normalizeLongitude(lon2 - lon1));
+        double u1 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1.0 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM;
+        int iterations = 0;
+        while (true) {
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(t1 * t1 + t2 * t2);
+            if (sinSigma == 0.0) return 0.0; // coincident points
+
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSqAlpha != 0.0 ? cosSigma - 2.0 * sinU1 * sinU2 / cosSqAlpha : 0.0;
+
+            double c = WGS84_F / 16.0 * cosSqAlpha * (4.0 + WGS84_F * (4.0 - 3.0 * cosSqAlpha));
+            double lambdaPrev = lambda;
+            lambda = l + (1.0 - c) * WGS84_F * sinAlpha * (sigma + c * sinSigma
+                    * (cos2SigmaM + c * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - lambdaPrev) < VINCENTY_TOLERANCE) break;
+            if (++iterations >= VINCENTY_MAX_ITERATIONS) {
+                return sphericalDistance(lat1, lon1, lat2, lon2);
+            }
+        }
+
+        double uSq = cosSqAlpha * (WGS84_A * WGS84_A - B * B) / (B * B);
+        double a = 1.0 + uSq / 16384.0 * (4096.0 + uSq * (-768.0 + uSq * (320.0 - 175.0 * uSq)));
+        double b = uSq / 1024.0 * (256.0 + uSq * (-128.0 + uSq * (74.0 - 47.0 * uSq)));
+        double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4.0 * (cosSigma
+                * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM) - b / 6.0 * cos2SigmaM
+                * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+        return B * a * (sigma - deltaSigma);
+    }
+
+    private static double sphericalDistance(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinDPhi = Math.sin((phi2 - phi1) / 2.0);
+        double sinDLambda = Math.sin(Math.toRadians(lon2 - lon1) / 2.0);
+        double h = sinDPhi * sinDPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+        return 2.0 * AUTHALIC_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    /**
+     * Authalic latitude in radians for a geodetic latitude in degrees
+     */
+    static double authalicLatitude(double latitude) {
+        double sinPhi = Math.sin(Math.toRadians(latitude));
+        double ratio = q(sinPhi) / QP;
+        return Math.asin(Math.max(-1.0, Math.min(1.0, ratio)));
+    }
+
+    private static double q(double sinPhi) {
+        double eSinPhi = E * sinPhi;
+        return (1.0 - E2) * (sinPhi / (1.0 - eSinPhi * eSinPhi)
+                - Math.log((1.0 - eSinPhi) / (1.0 + eSinPhi)) / (2.0 * E));
+    }
+
+    private static double normalizeLongitude(double dLon) {
+        while (dLon > 180.0) dLon -= 360.0;
+        while (dLon < -180.0) dLon += 360.0;
+        return dLon;
+    }
+}
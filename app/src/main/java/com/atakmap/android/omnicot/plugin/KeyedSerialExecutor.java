@@ -0,0 +1,166 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a small thread pool, one at a time and in submission order
+ * per key, while tasks for different keys run concurrently. The number of
+ * tasks waiting or running is bounded; submitting beyond that is refused so
+ * the caller can back off instead of blocking.
+ */
+public class KeyedSerialExecutor {
+
+    /**
+     * Drains one key's queue on a worker; the key stays scheduled until its
+     * queue is empty
+     */
+    private class KeyRunner implements Runnable {
+        final String key;
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+        KeyRunner(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            synchronized (KeyedSerialExecutor.this) {
+                task = queue.peek();
+            }
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    // One failing task must not stall the rest of the key, even
+                    // if it throws an Error
+                    failedCount.incrementAndGet();
+                }
+                task = next(this);
+            }
+        }
+    }
+
+    private final ExecutorService workers;
+    private final int capacity;
+    private final Map<String, KeyRunner> runners = new HashMap<>();
+    private int pending;
+    private boolean shutdown;
+
+    private long submittedCount;
+    private long rejectedCount;
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /**
+     * @param name Name of the worker threads
+     * @param threads Number of keys that can run at the same time
+     * @param capacity Maximum number of tasks waiting or running
+     */
+    public KeyedSerialExecutor(final String name, int threads, int capacity) {
+        this.capacity = capacity;
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Queue a task behind any other tasks for the same key
+     * @return false if the executor is full or shut down and the task was not queued
+     */
+    public synchronized boolean submit(String key, Runnable task) {
+        if (shutdown || pending >= capacity) {
+            rejectedCount++;
+            return false;
+        }
+
+        pending++;
+        submittedCount++;
+        KeyRunner runner = runners.get(key);
+        if (runner == null) {
+            runner = new KeyRunner(key);
+            runners.put(key, runner);
+            runner.queue.add(task);
+            workers.execute(runner);
+        } else {
+            // The key's runner is still draining and will reach this task in turn
+            runner.queue.add(task);
+        }
+        return true;
+    }
+
+    /**
+     * Finish a runner's current task and get its next one, or null once the
+     * key is idle
+     */
+    private synchronized Runnable next(KeyRunner runner) {
+        runner.queue.poll();
+        pending--;
+        notifyAll();
+
+        Runnable task = runner.queue.peek();
+        if (task == null) {
+            runners.remove(runner.key);
+        }
+        return task;
+    }
+
+    /**
+     * Wait until every queued task has run
+     * @return true if idle, false if the timeout passed first
+     */
+    public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (pending > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Refuse new tasks and stop the workers once queued tasks have run
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        workers.shutdown();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    public synchronized long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "KeyedSerialExecutor{pending=" + pending + ", keys=" + runners.size()
+                + ", submitted=" + submittedCount + ", rejected=" + rejectedCount
+                + ", failed=" + failedCount.get() + "}";
+    }
+}
@@ -0,0 +1,124 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.importexport.CotEventFactory;
+import com.atakmap.android.maps.PointMapItem;
+import com.atakmap.coremap.cot.event.CotDetail;
+import com.atakmap.coremap.cot.event.CotEvent;
+import com.atakmap.coremap.cot.event.CotPoint;
+import com.atakmap.coremap.maps.time.CoordinatedTime;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds minimal affiliation change events for the network. The marker is
+ * still serialized with CotEventFactory, so start, stale and point are the
+ * ones ATAK itself would send, but only uid, type, how, time, start, stale,
+ * point and the contact, archive and OmniCOT details are kept. Contact and
+ * archive are carried so a receiver that replaces its copy of the marker
+ * keeps the callsign and archive flag. The saving is in bytes on the wire,
+ * not in build time.
+ *
+ * Every {@link #SAMPLE_INTERVAL}th lean event is also serialized in full so
+ * the size of both forms can be compared in PluginMetrics.
+ */
+public final class LeanCotEvent {
+    private static final String TAG = "LeanCotEvent";
+
+    /** One in this many lean events is compared against the full event */
+    static final int SAMPLE_INTERVAL = 64;
+
+    // Details of the full event a lean event keeps
+    private static final String[] KEPT_DETAILS = {"contact", "archive"};
+
+    private static final AtomicInteger sampleCounter = new AtomicInteger();
+
+    private LeanCotEvent() {
+    }
+
+    /**
+     * Build the lean event for a marker's new type
+     * @param change The change the event announces, or null for none
+     * @return The event, or null if the marker could not be serialized or has no position
+     */
+    static CotEvent create(PointMapItem mapItem, String newType, AffiliationChange change) {
+        boolean sample = sampleCounter.getAndIncrement() % SAMPLE_INTERVAL == 0;
+        long start = System.nanoTime();
+        CotEvent full = CotEventFactory.createCotEvent(mapItem);
+        if (full == null) return null;
+        long fullNanos = System.nanoTime() - start;
+
+        CotEvent event = trim(full, mapItem, newType, change);
+        if (sample && event != null) {
+            compareWithFull(newType, change, full, event, fullNanos,
+                    System.nanoTime() - start);
+        }
+        return event;
+    }
+
+    /**
+     * Copy the fields a receiver needs out of the marker's full event
+     */
+    private static CotEvent trim(CotEvent full, PointMapItem mapItem, String newType,
+                                 AffiliationChange change) {
+        CotPoint point = full.getCotPoint();
+        if (point == null) return null;
+
+        CotEvent event = new CotEvent();
+        event.setVersion("2.0");
+        event.setUID(mapItem.getUID());
+        event.setType(newType);
+        event.setHow("h-e"); // Human entry
+        event.setTime(new CoordinatedTime(System.currentTimeMillis()));
+        event.setStart(full.getStart());
+        event.setStale(full.getStale());
+        event.setPoint(point);
+
+        CotDetail detail = new CotDetail("detail");
+        CotDetail fullDetail = full.getDetail();
+        if (fullDetail != null) {
+            for (String name : KEPT_DETAILS) {
+                CotDetail kept = fullDetail.getFirstChildByName(0, name);
+                if (kept != null) {
+                    detail.addChild(kept);
+                }
+            }
+        }
+        OmniCotDetail.apply(detail, change);
+        event.setDetail(detail);
+        return event;
+    }
+
+    /**
+     * Record the size and build time of a lean event next to the full event
+     * it was trimmed from
+     */
+    private static void compareWithFull(String newType, AffiliationChange change,
+                                        CotEvent full, CotEvent lean,
+                                        long fullNanos, long leanNanos) {
+        try {
+            // Turn the full event into what the full path would have sent
+            full.setType(newType);
+            full.setHow("h-e");
+            CotDetail detail = full.getDetail();
+            if (detail != null) {
+                OmniCotDetail.apply(detail, change);
+            }
+
+            // Serialized length is what goes over the network
+            int leanBytes = lean.toString().length();
+            int fullBytes = full.toString().length();
+
+            PluginMetrics.EVENT_BUILD_LEAN.record(leanNanos);
+            PluginMetrics.EVENT_BUILD_FULL.record(fullNanos);
+            PluginMetrics.EVENT_SIZE_SAMPLES.increment();
+            PluginMetrics.EVENT_BYTES_LEAN.add(leanBytes);
+            PluginMetrics.EVENT_BYTES_FULL.add(fullBytes);
+            Trace.record(Trace.DEBUG, Trace.LEAN_EVENT_SAMPLED,
+                    leanBytes, fullBytes, leanNanos, fullNanos);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not compare lean event with full event", e);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.android.maps.MapEvent;
+import com.atakmap.android.maps.MapEventDispatcher;
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapItem;
+import com.atakmap.android.maps.MapView;
+import com.atakmap.android.maps.Marker;
+import com.atakmap.comms.CommsLogger;
+import com.atakmap.comms.CommsMapComponent;
+import com.atakmap.coremap.cot.event.CotEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps CoT statistics up to date from map events so reading them does not
+ * require walking the map tree. The map is walked once on start to seed the
+ * counters; after that every add, remove or type change costs O(1).
+ * The type of each inbound CoT message for a counted marker is remembered,
+ * so when the map later applies that type the change is counted as made
+ * by a teammate. Counters only ever move on the map's own type changes.
+ */
+public class LiveCotStatistics implements MapEventDispatcher.MapEventDispatchListener,
+        MapItem.OnTypeChangedListener {
+    private static final String TAG = "LiveCotStatistics";
+
+    private static LiveCotStatistics instance;
+
+    /**
+     * What was counted for a single item, so it can be uncounted exactly
+     */
+    private static class CountedItem {
+        String type;
+        char affiliation;
+        boolean updated;
+        boolean teamUpdated;
+    }
+
+    private final CotStatistics counters = new CotStatistics();
+    private final CotTypeTrie typeTrie = new CotTypeTrie();
+    private final Map<String, CountedItem> countedItems = new HashMap<>();
+
+    // Latest inbound type per UID that differs from the counted type and
+    // has not been applied to the map yet
+    private final Map<String, String> inboundTypes = new HashMap<>();
+    private MapView mapView;
+
+    // Sees every CoT message received from the network
+    private final CommsLogger inboundLogger = new CommsLogger() {
+        @Override
+        public void logSend(CotEvent msg, String destination) {
+        }
+
+        @Override
+        public void logSend(CotEvent msg, String[] toUIDs) {
+        }
+
+        @Override
+        public void logReceive(CotEvent msg, String rxid, String server) {
+            if (msg != null) {
+                onInboundEvent(msg.getUID(), msg.getType());
+            }
+        }
+
+        @Override
+        public void dispose() {
+        }
+    };
+
+    /**
+     * Get the running instance, or null if live statistics are not started
+     */
+    public static synchronized LiveCotStatistics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start tracking statistics for the current map
+     * @return The running instance, or null if the map is not available
+     */
+    public static synchronized LiveCotStatistics start() {
+        if (instance != null) return instance;
+
+        MapView mapView = MapView.getMapView();
+        if (mapView == null) {
+            Log.w(TAG, "MapView is null");
+            return null;
+        }
+
+        LiveCotStatistics live = new LiveCotStatistics();
+        live.attach(mapView);
+        instance = live;
+        return live;
+    }
+
+    /**
+     * Stop tracking and release all map listeners
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.detach();
+            instance = null;
+        }
+    }
+
+    /**
+     * Get the current statistics, falling back to a full scan when live
+     * tracking is not running
+     */
+    public static CotStatistics getStatistics() {
+        LiveCotStatistics live = getInstance();
+        return live != null ? live.snapshot() : CotStatistics.calculateStatistics();
+    }
+
+    private void attach(MapView mapView) {
+        this.mapView = mapView;
+
+        MapEventDispatcher dispatcher = mapView.getMapEventDispatcher();
+        dispatcher.addMapEventListener(MapEvent.ITEM_ADDED, this);
+        dispatcher.addMapEventListener(MapEvent.ITEM_REMOVED, this);
+
+        CommsMapComponent comms = CommsMapComponent.getInstance();
+        if (comms != null) {
+            comms.registerCommsLogger(inboundLogger);
+        } else {
+            Log.w(TAG, "Comms not available, teammate changes are not tracked");
+        }
+
+        // Seed the counters with what is already on the map
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup != null) {
+            MapModelTraversal.Report report = MapTraversal.walk(rootGroup,
+                    new MapTraversal.Collector() {
+                        @Override
+                        public String getName() {
+                            return "LiveCotStatistics seed";
+                        }
+
+                        @Override
+                        public void visit(MapItem item) {
+                            onItemAdded(item);
+                        }
+                    });
+            Log.d(TAG, "Seed traversal: " + report);
+        }
+
+        Log.d(TAG, "Live statistics started with " + countedItems.size() + " CoT items");
+    }
+
+    private void detach() {
+        if (mapView == null) return;
+
+        MapEventDispatcher dispatcher = mapView.getMapEventDispatcher();
+        dispatcher.removeMapEventListener(MapEvent.ITEM_ADDED, this);
+        dispatcher.removeMapEventListener(MapEvent.ITEM_REMOVED, this);
+
+        CommsMapComponent comms = CommsMapComponent.getInstance();
+        if (comms != null) {
+            comms.unregisterCommsLogger(inboundLogger);
+        }
+
+        MapGroup rootGroup = mapView.getRootGroup();
+        if (rootGroup != null) {
+            MapTraversal.walk(rootGroup, new MapTraversal.Collector() {
+                @Override
+                public String getName() {
+                    return "LiveCotStatistics release";
+                }
+
+                @Override
+                public void visit(MapItem item) {
+                    if (item instanceof Marker) {
+                        item.removeOnTypeChangedListener(LiveCotStatistics.this);
+                    }
+                }
+            });
+        }
+
+        synchronized (this) {
+            countedItems.clear();
+            inboundTypes.clear();
+        }
+        mapView = null;
+    }
+
+    @Override
+    public void onMapEvent(MapEvent event) {
+        MapItem item = event.getItem();
+        if (item == null) return;
+
+        if (MapEvent.ITEM_ADDED.equals(event.getType())) {
+            onItemAdded(item);
+        } else if (MapEvent.ITEM_REMOVED.equals(event.getType())) {
+            onItemRemoved(item);
+        }
+    }
+
+    @Override
+    public void onTypeChanged(MapItem item) {
+        synchronized (this) {
+            CountedItem counted = countedItems.get(item.getUID());
+            String type = CotStatistics.getCountableType(item);
+            if (counted == null) {
+                count(item);
+            } else if (type == null) {
+                uncount(item.getUID());
+            } else {
+                // A new affiliation matching the last inbound message for the
+                // marker came from a teammate
+                String inbound = inboundTypes.remove(item.getUID());
+                char previous = counted.affiliation;
+                moveType(counted, type);
+                if (type.equals(inbound) && counted.affiliation != previous
+                        && !counted.teamUpdated) {
+                    counted.teamUpdated = true;
+                    counters.countTeamUpdated(1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remember an inbound message's type for a counted marker. Nothing is
+     * counted until the map applies it, since ATAK may still drop the
+     * message, e.g. as older than what it holds.
+     */
+    synchronized void onInboundEvent(String uid, String type) {
+        if (uid == null) return;
+        CountedItem counted = countedItems.get(uid);
+        if (counted == null) return;
+
+        String countableType = CotStatistics.getCountableType(type);
+        if (countableType == null || countableType.charAt(2) == counted.affiliation) {
+            inboundTypes.remove(uid);
+        } else {
+            inboundTypes.put(uid, countableType);
+        }
+    }
+
+    private void moveType(CountedItem counted, String type) {
+        if (type.equals(counted.type)) return;
+        typeTrie.remove(counted.type);
+        typeTrie.add(type);
+        counted.type = type;
+
+        char affiliation = type.charAt(2);
+        if (affiliation != counted.affiliation) {
+            counters.count(counted.affiliation, counted.updated, -1);
+            counted.affiliation = affiliation;
+            counters.count(affiliation, counted.updated, 1);
+        }
+    }
+
+    private void onItemAdded(MapItem item) {
+        // Only markers are ever counted, but their type may become countable later
+        if (!(item instanceof Marker)) return;
+
+        item.addOnTypeChangedListener(this);
+        synchronized (this) {
+            if (!count(item) && item.getGroup() == null) {
+                // Removed while the seed walk held it; the removal found nothing to undo
+                item.removeOnTypeChangedListener(this);
+            }
+        }
+    }
+
+    private void onItemRemoved(MapItem item) {
+        if (!(item instanceof Marker)) return;
+
+        item.removeOnTypeChangedListener(this);
+        synchronized (this) {
+            uncount(item.getUID());
+        }
+    }
+
+    /**
+     * Called when OmniCOT marks an item as updated
+     */
+    synchronized void onMarkedUpdated(MapItem item) {
+        CountedItem counted = countedItems.get(item.getUID());
+        if (counted != null && !counted.updated) {
+            counted.updated = true;
+            counters.countUpdated(1);
+        }
+    }
+
+    /**
+     * Count an item unless it is already counted or no longer on the map
+     * @return true if the item is counted now
+     */
+    private boolean count(MapItem item) {
+        String type = CotStatistics.getCountableType(item);
+        if (type == null) return false;
+
+        String uid = item.getUID();
+        if (countedItems.containsKey(uid)) return true;
+
+        // The seed walk runs off the UI thread and may reach an item after
+        // its removal was handled, so check under the lock it still has a group
+        if (item.getGroup() == null) return false;
+
+        CountedItem counted = new CountedItem();
+        counted.type = type;
+        counted.affiliation = type.charAt(2);
+        counted.updated = CotStatistics.isMarkedUpdated(item);
+        countedItems.put(uid, counted);
+        counters.count(counted.affiliation, counted.updated, 1);
+        typeTrie.add(type);
+        return true;
+    }
+
+    private void uncount(String uid) {
+        inboundTypes.remove(uid);
+        CountedItem counted = countedItems.remove(uid);
+        if (counted != null) {
+            typeTrie.remove(counted.type);
+            counters.count(counted.affiliation, counted.updated, -1);
+            if (counted.teamUpdated) {
+                counters.countTeamUpdated(-1);
+            }
+        }
+    }
+
+    /**
+     * Get a copy of the current counters
+     */
+    public synchronized CotStatistics snapshot() {
+        return counters.copy();
+    }
+
+    /**
+     * Number of counted markers whose type starts with a prefix
+     * @param prefix Whole dash-separated segments, e.g. "a-h-G-E-V-A"
+     */
+    public synchronized int countTypePrefix(String prefix) {
+        return typeTrie.count(prefix);
+    }
+
+    /**
+     * Counts for each type segment below a prefix, largest first, for
+     * drilling down without walking the map
+     * @param prefix Whole dash-separated segments, or "" for the first segment
+     */
+    public synchronized List<CotTypeTrie.Entry> getTypeBreakdown(String prefix) {
+        return typeTrie.children(prefix);
+    }
+}
@@ -0,0 +1,53 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.Collection;
+
+/**
+ * The parts of a map tree the plugin's traversal and CoT counting read,
+ * plus shape vertices for measuring AOIs. {@link AtakMapModel} backs it
+ * with the live ATAK map; other implementations let the traversal and
+ * {@link CotCounts} run against generated data on a plain JVM.
+ * @param <G> Group type
+ * @param <I> Item type
+ */
+public interface MapModel<G, I> {
+
+    Collection<G> getChildGroups(G group);
+
+    Collection<I> getItems(G group);
+
+    String getUid(I item);
+
+    String getType(I item);
+
+    /**
+     * True for point items that may carry a CoT type worth counting
+     */
+    boolean isMarker(I item);
+
+    /**
+     * True for drawn shapes that may be an AOI
+     */
+    boolean isShape(I item);
+
+    /**
+     * True if OmniCOT has changed the item's affiliation
+     */
+    boolean isMarkedUpdated(I item);
+
+    /**
+     * Latitude of a point item, NaN if the item has no point
+     */
+    double getLatitude(I item);
+
+    /**
+     * Longitude of a point item, NaN if the item has no point
+     */
+    double getLongitude(I item);
+
+    /**
+     * Vertices of a shape as interleaved latitude, longitude pairs, or
+     * null if the item is not a shape
+     */
+    double[] getShapeCoordinates(I item);
+}
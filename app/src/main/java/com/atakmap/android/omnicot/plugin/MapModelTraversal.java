@@ -0,0 +1,136 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Walks any {@link MapModel} tree once and hands every item to a set of
+ * visitors. {@link MapTraversal} runs this over the live ATAK map.
+ */
+public final class MapModelTraversal {
+
+    /**
+     * Receives each item found during a traversal
+     */
+    public interface Visitor<I> {
+        /**
+         * Name used when reporting how long this visitor took
+         */
+        String getName();
+
+        void visit(I item);
+    }
+
+    /**
+     * Timing and size information about a completed traversal
+     */
+    public static class Report {
+        private final String[] collectorNames;
+        private final long[] collectorNanos;
+        private int itemCount;
+        private int groupCount;
+        private long totalNanos;
+
+        Report(List<? extends Visitor<?>> visitors) {
+            collectorNames = new String[visitors.size()];
+            collectorNanos = new long[visitors.size()];
+            for (int i = 0; i < collectorNames.length; i++) {
+                collectorNames[i] = visitors.get(i).getName();
+            }
+        }
+
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        public int getGroupCount() {
+            return groupCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public int getCollectorCount() {
+            return collectorNames.length;
+        }
+
+        public String getCollectorName(int index) {
+            return collectorNames[index];
+        }
+
+        /**
+         * Time spent inside the given visitor's visit calls
+         */
+        public long getCollectorNanos(int index) {
+            return collectorNanos[index];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%d items in %d groups, %.2f ms",
+                    itemCount, groupCount, totalNanos / 1e6));
+            for (int i = 0; i < collectorNames.length; i++) {
+                sb.append(i == 0 ? " (" : ", ");
+                sb.append(String.format(Locale.US, "%s %.2f ms",
+                        collectorNames[i], collectorNanos[i] / 1e6));
+            }
+            if (collectorNames.length > 0) sb.append(')');
+            return sb.toString();
+        }
+    }
+
+    private MapModelTraversal() {
+    }
+
+    /**
+     * Walk the group and all of its descendants once, visiting every item
+     * with each visitor in order
+     * @param model Model the groups and items belong to
+     * @param root The group to start from
+     * @param visitors Visitors to feed
+     * @return Report with per-visitor timings
+     */
+    public static <G, I> Report walk(MapModel<G, I> model, G root,
+                                     List<? extends Visitor<? super I>> visitors) {
+        Report report = new Report(visitors);
+        int visitorCount = visitors.size();
+        long start = System.nanoTime();
+
+        // Iterative walk so deep group hierarchies cannot overflow the stack
+        Deque<G> pending = new ArrayDeque<>();
+        if (root != null) pending.push(root);
+
+        List<G> childGroups = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            G group = pending.pop();
+            report.groupCount++;
+
+            Collection<I> items = model.getItems(group);
+            for (I item : items) {
+                if (item == null) continue;
+                report.itemCount++;
+                for (int i = 0; i < visitorCount; i++) {
+                    long visitStart = System.nanoTime();
+                    visitors.get(i).visit(item);
+                    report.collectorNanos[i] += System.nanoTime() - visitStart;
+                }
+            }
+
+            // Push children in reverse so they are visited in their natural order
+            childGroups.clear();
+            childGroups.addAll(model.getChildGroups(group));
+            for (int i = childGroups.size() - 1; i >= 0; i--) {
+                if (childGroups.get(i) != null) pending.push(childGroups.get(i));
+            }
+        }
+
+        report.totalNanos = System.nanoTime() - start;
+        return report;
+    }
+}
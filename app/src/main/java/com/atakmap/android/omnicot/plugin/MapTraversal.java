@@ -0,0 +1,33 @@
+package com.atakmap.android.omnicot.plugin;
+
+import com.atakmap.android.maps.MapGroup;
+import com.atakmap.android.maps.MapItem;
+
+import java.util.Arrays;
+
+/**
+ * Walks a map group tree once and hands every item to a set of collectors,
+ * so several views of the map can be gathered for the cost of one walk
+ */
+public class MapTraversal {
+
+    /**
+     * Receives each map item found during a traversal
+     */
+    public interface Collector extends MapModelTraversal.Visitor<MapItem> {
+    }
+
+    private MapTraversal() {
+    }
+
+    /**
+     * Walk the group and all of its descendants once, visiting every item
+     * with each collector in order
+     * @param root The group to start from
+     * @param collectors Collectors to feed
+     * @return Report with per-collector timings
+     */
+    public static MapModelTraversal.Report walk(MapGroup root, Collector... collectors) {
+        return MapModelTraversal.walk(AtakMapModel.INSTANCE, root, Arrays.asList(collectors));
+    }
+}
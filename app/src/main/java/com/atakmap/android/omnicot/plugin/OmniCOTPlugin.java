@@ -2,18 +2,26 @@
 package com.atakmap.android.omnicot.plugin;
 
 import android.content.Context;
+import android.graphics.Typeface;
 import android.util.Log;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
 import android.widget.LinearLayout;
 import android.widget.ListView;
+import android.widget.SeekBar;
 import android.widget.TextView;
 
 import com.atak.plugins.impl.PluginContextProvider;
 import com.atak.plugins.impl.PluginLayoutInflater;
 import com.atakmap.android.menu.MapMenuReceiver;
+import com.atakmap.coremap.filesystem.FileSystemUtils;
 
+import java.io.File;
 import java.util.List;
+import java.util.Locale;
 
 import gov.tak.api.plugin.IPlugin;
 import gov.tak.api.plugin.IServiceController;
@@ -31,6 +39,9 @@ import gov.tak.platform.marshal.MarshalManager;
 public class OmniCOTPlugin implements IPlugin {
     private static final String TAG = "OmniCOTPlugin";
 
+    // How long onStop waits for queued affiliation updates
+    private static final long UPDATE_DRAIN_TIMEOUT_MS = 2000;
+
     IServiceController serviceController;
     Context pluginContext;
     IHostUIService uiService;
@@ -50,12 +61,31 @@ public class OmniCOTPlugin implements IPlugin {
     // CoT Dashboard components
     private TextView cotTotalCount;
     private TextView cotUpdatedCount;
+    private TextView cotTeamUpdatedCount;
     private TextView cotUnknownCount;
     private TextView cotNeutralCount;
     private TextView cotFriendlyCount;
     private TextView cotHostileCount;
+    private TextView cotDiagnosticsText;
+    private TextView cotTypePath;
+    private LinearLayout cotTypeRows;
+
+    // Type prefix the breakdown is drilled down to, "" for all types
+    private String typePrefix = "";
+
+    // Main dashboard preview components
+    private TextView previewTotalCot;
+    private TextView previewUpdatedCot;
+    private TextView previewAoiCount;
+
+    // Background computation of dashboard data
+    private DashboardRefresher dashboardRefresher;
+
+    // Staged initialization that runs after the plugin is loaded
+    private PluginStartup startup;
 
     public OmniCOTPlugin(IServiceController serviceController) {
+        long start = System.nanoTime();
         this.serviceController = serviceController;
         final PluginContextProvider ctxProvider = serviceController
                 .getService(PluginContextProvider.class);
@@ -83,14 +113,17 @@ public class OmniCOTPlugin implements IPlugin {
                 })
                 .build();
 
-        // Initialize menu factory
+        // Initialize menu factory; its menu resources are built in onStart
         menuFactory = new AffiliationMenuFactory(pluginContext);
+
+        PluginMetrics.recordStartupStage("constructor", System.nanoTime() - start);
         Log.d(TAG, "OmniCOT plugin initialized");
     }
 
     @Override
     public void onStart() {
         Log.d(TAG, "OmniCOT plugin starting");
+        long start = System.nanoTime();
 
         // the plugin is starting, add the button to the toolbar
         if (uiService != null) {
@@ -102,6 +135,56 @@ public class OmniCOTPlugin implements IPlugin {
             MapMenuReceiver.getInstance().registerMapMenuFactory(menuFactory);
             Log.i(TAG, "Affiliation menu factory registered");
         }
+
+        // Outbound sending is stopped in onStop, restart it
+        AffiliationUpdater.getOutboundScheduler().start();
+        OmniCotSettings.load();
+
+        // Build menu resources and start event-driven statistics in the
+        // background. A menu opened before then builds its resources on
+        // demand, and the dashboard falls back to a map walk.
+        final AffiliationMenuFactory factory = menuFactory;
+        startup = new PluginStartup()
+                .addStage("menu.resources", new Runnable() {
+                    @Override
+                    public void run() {
+                        if (factory != null) factory.prepareResources();
+                    }
+                })
+                .addStage("menu.icons", new Runnable() {
+                    @Override
+                    public void run() {
+                        if (factory != null) factory.prewarm();
+                    }
+                })
+                .addStage("statistics.live", new Runnable() {
+                    @Override
+                    public void run() {
+                        LiveCotStatistics.start();
+                    }
+                })
+                .addStage("aoi.registry", new Runnable() {
+                    @Override
+                    public void run() {
+                        AoiRegistry.start();
+                    }
+                })
+                .addStage("aoi.join", new Runnable() {
+                    @Override
+                    public void run() {
+                        AoiAffiliationJoin.start();
+                    }
+                });
+        startup.start();
+
+        dashboardRefresher = new DashboardRefresher(new DashboardRefresher.Listener() {
+            @Override
+            public void onDashboardScan(DashboardScan scan) {
+                applyDashboardScan(scan);
+            }
+        });
+
+        PluginMetrics.recordStartupStage("onStart", System.nanoTime() - start);
     }
 
     @Override
@@ -118,6 +201,31 @@ public class OmniCOTPlugin implements IPlugin {
             MapMenuReceiver.getInstance().unregisterMapMenuFactory(menuFactory);
             Log.i(TAG, "Affiliation menu factory unregistered");
         }
+
+        if (dashboardRefresher != null) {
+            dashboardRefresher.shutdown();
+            dashboardRefresher = null;
+        }
+
+        // Let queued menu selections finish, write the markers waiting to be
+        // persisted, then send any affiliation changes still waiting in the
+        // broadcast window
+        if (!AffiliationUpdater.awaitUpdates(UPDATE_DRAIN_TIMEOUT_MS)) {
+            Log.w(TAG, "Affiliation updates still pending at shutdown");
+        }
+        AffiliationUpdater.flushPersistence();
+        AffiliationUpdater.flushBroadcasts();
+        AffiliationUpdater.getOutboundScheduler().shutdown();
+
+        // Finish or skip pending startup stages before stopping what they started
+        if (startup != null) {
+            startup.cancel();
+            startup = null;
+        }
+
+        AoiAffiliationJoin.stop();
+        AoiRegistry.stop();
+        LiveCotStatistics.stop();
     }
 
     private void showPane() {
@@ -130,12 +238,12 @@ public class OmniCOTPlugin implements IPlugin {
             LinearLayout cotCard = mainView.findViewById(R.id.card_cot_dashboard);
             LinearLayout aoiCard = mainView.findViewById(R.id.card_aoi_management);
             
-            TextView previewTotalCot = mainView.findViewById(R.id.preview_total_cot);
-            TextView previewUpdatedCot = mainView.findViewById(R.id.preview_updated_cot);
-            TextView previewAoiCount = mainView.findViewById(R.id.preview_aoi_count);
+            previewTotalCot = mainView.findViewById(R.id.preview_total_cot);
+            previewUpdatedCot = mainView.findViewById(R.id.preview_updated_cot);
+            previewAoiCount = mainView.findViewById(R.id.preview_aoi_count);
             
             // Update preview stats
-            updatePreviewStats(previewTotalCot, previewUpdatedCot, previewAoiCount);
+            updatePreviewStats();
             
             // Setup click listeners for navigation
             cotCard.setOnClickListener(new View.OnClickListener() {
@@ -175,13 +283,22 @@ public class OmniCOTPlugin implements IPlugin {
             // Initialize CoT Dashboard components
             cotTotalCount = cotView.findViewById(R.id.cot_total_count);
             cotUpdatedCount = cotView.findViewById(R.id.cot_updated_count);
+            cotTeamUpdatedCount = cotView.findViewById(R.id.cot_team_updated_count);
             cotUnknownCount = cotView.findViewById(R.id.cot_unknown_count);
             cotNeutralCount = cotView.findViewById(R.id.cot_neutral_count);
             cotFriendlyCount = cotView.findViewById(R.id.cot_friendly_count);
             cotHostileCount = cotView.findViewById(R.id.cot_hostile_count);
+            cotDiagnosticsText = cotView.findViewById(R.id.cot_diagnostics_text);
+            cotTypePath = cotView.findViewById(R.id.cot_type_path);
+            cotTypeRows = cotView.findViewById(R.id.cot_type_rows);
             
             Button backButton = cotView.findViewById(R.id.btn_back_cot);
             Button refreshButton = cotView.findViewById(R.id.btn_refresh_cot);
+            Button exportMetricsButton = cotView.findViewById(R.id.btn_export_metrics);
+            Button typeUpButton = cotView.findViewById(R.id.btn_type_up);
+            CheckBox leanEventsCheck = cotView.findViewById(R.id.settings_lean_events);
+            final TextView historyLabel = cotView.findViewById(R.id.settings_history_label);
+            SeekBar historySeek = cotView.findViewById(R.id.settings_history_size);
             
             // Setup back button
             backButton.setOnClickListener(new View.OnClickListener() {
@@ -202,6 +319,54 @@ public class OmniCOTPlugin implements IPlugin {
                     AffiliationUpdater.showToast("CoT statistics refreshed");
                 }
             });
+
+            // Setup metrics export button
+            exportMetricsButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    exportMetrics();
+                }
+            });
+
+            // Go back up one type segment
+            typeUpButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int dash = typePrefix.lastIndexOf('-');
+                    showTypeBreakdown(dash < 0 ? "" : typePrefix.substring(0, dash));
+                }
+            });
+
+            // Settings
+            leanEventsCheck.setChecked(OmniCotSettings.isLeanEvents());
+            leanEventsCheck.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                @Override
+                public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                    OmniCotSettings.setLeanEvents(isChecked);
+                    Log.d(TAG, "Lean affiliation events " + (isChecked ? "enabled" : "disabled"));
+                }
+            });
+
+            historySeek.setMax(OmniCotDetail.MAX_HISTORY);
+            historySeek.setProgress(OmniCotSettings.getHistorySize());
+            historyLabel.setText(formatHistoryLabel(OmniCotSettings.getHistorySize()));
+            historySeek.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+                @Override
+                public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                    historyLabel.setText(formatHistoryLabel(progress));
+                }
+
+                @Override
+                public void onStartTrackingTouch(SeekBar seekBar) {
+                }
+
+                @Override
+                public void onStopTrackingTouch(SeekBar seekBar) {
+                    // Stored once the user lets go rather than on every step
+                    OmniCotSettings.setHistorySize(seekBar.getProgress());
+                    Log.d(TAG, "Affiliation change history set to " + seekBar.getProgress());
+                }
+            });
             
             cotDashboardPane = new PaneBuilder(cotView)
                     .setMetaValue(Pane.RELATIVE_LOCATION, Pane.Location.Default)
@@ -259,11 +424,29 @@ public class OmniCOTPlugin implements IPlugin {
                     Log.d(TAG, "Deleting AOI: " + aoiInfo.getName());
                     AoiManager.deleteAoi(aoiInfo);
                     AffiliationUpdater.showToast("Deleted " + aoiInfo.getName());
-                    // Refresh the list
-                    refreshAoiList();
+                    // Drop just this row instead of rescanning the map
+                    if (aoiAdapter.removeAoi(aoiInfo.getUid())) {
+                        updateAoiEmptyState(aoiAdapter.getCount());
+                        if (previewAoiCount != null) {
+                            previewAoiCount.setText(String.valueOf(aoiAdapter.getCount()));
+                        }
+                    }
                 }
             });
             aoiListView.setAdapter(aoiAdapter);
+
+            // Build row text a page ahead of what is about to scroll into view
+            aoiListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(AbsListView view, int scrollState) {
+                }
+
+                @Override
+                public void onScroll(AbsListView view, int firstVisibleItem,
+                                     int visibleItemCount, int totalItemCount) {
+                    aoiAdapter.prefetch(firstVisibleItem, visibleItemCount);
+                }
+            });
             
             // Setup refresh button
             refreshButton.setOnClickListener(new View.OnClickListener() {
@@ -295,26 +478,65 @@ public class OmniCOTPlugin implements IPlugin {
         }
     }
     
+    /**
+     * Ask the background refresher for new dashboard data
+     */
+    private void requestRefresh(int flags) {
+        if (dashboardRefresher != null) {
+            dashboardRefresher.requestRefresh(flags);
+        }
+    }
+
+    /**
+     * Apply a completed scan to whichever dashboard views exist, on the UI thread
+     */
+    private void applyDashboardScan(DashboardScan scan) {
+        CotStatistics stats = scan.getStatistics();
+        List<AoiInfo> aois = scan.getAois();
+
+        updateCotStatistics(stats);
+
+        if (previewTotalCot != null) {
+            previewTotalCot.setText(String.valueOf(stats.getTotalCot()));
+            previewUpdatedCot.setText(String.valueOf(stats.getUpdatedCot()));
+            if (aois != null) {
+                previewAoiCount.setText(String.valueOf(aois.size()));
+            }
+        }
+
+        if (aois != null) {
+            updateAoiList(aois);
+        }
+    }
+    
     /**
      * Refresh the AOI list from the map
      */
     private void refreshAoiList() {
         Log.d(TAG, "Refreshing AOI list");
         
-        // Update CoT statistics
-        updateCotStatistics();
-        
-        // Get all AOIs from the map
-        List<AoiInfo> aois = AoiManager.getAllAois();
-        
+        // AOIs and CoT statistics are gathered together off the UI thread
+        requestRefresh(DashboardRefresher.REFRESH_ALL);
+    }
+
+    /**
+     * Show a freshly scanned AOI list
+     */
+    private void updateAoiList(List<AoiInfo> aois) {
         // Update adapter
         if (aoiAdapter != null) {
             aoiAdapter.setAoiList(aois);
         }
         
-        // Show/hide empty state
+        updateAoiEmptyState(aois.size());
+    }
+
+    /**
+     * Show the empty state instead of the list when there are no AOIs
+     */
+    private void updateAoiEmptyState(int aoiCount) {
         if (emptyStateContainer != null && aoiListView != null) {
-            if (aois.isEmpty()) {
+            if (aoiCount == 0) {
                 emptyStateContainer.setVisibility(View.VISIBLE);
                 aoiListView.setVisibility(View.GONE);
             } else {
@@ -322,8 +544,6 @@ public class OmniCOTPlugin implements IPlugin {
                 aoiListView.setVisibility(View.VISIBLE);
             }
         }
-        
-        Log.d(TAG, "AOI list updated with " + aois.size() + " items");
     }
     
     /**
@@ -331,46 +551,121 @@ public class OmniCOTPlugin implements IPlugin {
      */
     private void updateCotStatistics() {
         if (cotTotalCount == null) return;
+
+        requestRefresh(DashboardRefresher.REFRESH_STATISTICS);
+    }
+
+    /**
+     * Update CoT statistics dashboard with already calculated statistics
+     */
+    private void updateCotStatistics(CotStatistics stats) {
+        if (cotTotalCount == null) return;
         
         try {
-            // Calculate statistics
-            CotStatistics stats = CotStatistics.calculateStatistics();
-            
             // Update UI
             cotTotalCount.setText(String.valueOf(stats.getTotalCot()));
             cotUpdatedCount.setText(String.valueOf(stats.getUpdatedCot()));
+            cotTeamUpdatedCount.setText(String.valueOf(stats.getTeamUpdatedCot()));
             cotUnknownCount.setText(String.valueOf(stats.getUnknownCount()));
             cotNeutralCount.setText(String.valueOf(stats.getNeutralCount()));
             cotFriendlyCount.setText(String.valueOf(stats.getFriendlyCount()));
             cotHostileCount.setText(String.valueOf(stats.getHostileCount()));
-            
-            Log.d(TAG, "CoT statistics updated - Total: " + stats.getTotalCot() + 
-                  ", Updated: " + stats.getUpdatedCot());
+            updateDiagnostics();
+            showTypeBreakdown(typePrefix);
         } catch (Exception e) {
             Log.e(TAG, "Error updating CoT statistics", e);
         }
     }
     
     /**
-     * Update preview statistics on main dashboard
+     * Show the counts for each type segment below a prefix, read from the
+     * live type trie so drilling down never walks the map
+     */
+    private void showTypeBreakdown(String prefix) {
+        if (cotTypeRows == null) return;
+
+        typePrefix = prefix;
+        cotTypePath.setText(prefix.isEmpty() ? "All types" : prefix);
+        cotTypeRows.removeAllViews();
+
+        LiveCotStatistics live = LiveCotStatistics.getInstance();
+        if (live == null) {
+            cotTypeRows.addView(createTypeRow("Available once live statistics start", null));
+            return;
+        }
+
+        List<CotTypeTrie.Entry> entries = live.getTypeBreakdown(prefix);
+        if (entries.isEmpty()) {
+            cotTypeRows.addView(createTypeRow(prefix.isEmpty()
+                    ? "No CoT items" : live.countTypePrefix(prefix) + " items of this type", null));
+            return;
+        }
+
+        for (CotTypeTrie.Entry entry : entries) {
+            cotTypeRows.addView(createTypeRow(String.format(Locale.US, "%-24s %6d",
+                    entry.getPrefix(), entry.getCount()), entry.getPrefix()));
+        }
+    }
+
+    /**
+     * Create a breakdown row, drilling down into childPrefix when tapped
+     */
+    private TextView createTypeRow(String text, final String childPrefix) {
+        TextView row = new TextView(pluginContext);
+        row.setText(text);
+        row.setTextSize(13);
+        row.setTextColor(0xFFCCCCCC);
+        row.setTypeface(Typeface.MONOSPACE);
+        row.setPadding(0, 8, 0, 8);
+        if (childPrefix != null) {
+            row.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    showTypeBreakdown(childPrefix);
+                }
+            });
+        }
+        return row;
+    }
+
+    /**
+     * Show the latest latency percentiles in the diagnostics section
      */
-    private void updatePreviewStats(TextView previewTotalCot, TextView previewUpdatedCot, TextView previewAoiCount) {
+    private void updateDiagnostics() {
+        if (cotDiagnosticsText == null) return;
+
+        String summary = PluginMetrics.formatSummary();
+        cotDiagnosticsText.setText(summary.isEmpty() ? "No samples yet" : summary);
+    }
+
+    private static String formatHistoryLabel(int historySize) {
+        if (historySize == 0) return "Change history: off";
+        return "Change history: last " + historySize
+                + (historySize == 1 ? " change" : " changes");
+    }
+
+    /**
+     * Write a metrics snapshot and the trace buffer to the plugin's tool directory
+     */
+    private void exportMetrics() {
         try {
-            // Calculate CoT statistics
-            CotStatistics stats = CotStatistics.calculateStatistics();
-            
-            // Get AOI count
-            List<AoiInfo> aois = AoiManager.getAllAois();
-            
-            // Update preview text views
-            previewTotalCot.setText(String.valueOf(stats.getTotalCot()));
-            previewUpdatedCot.setText(String.valueOf(stats.getUpdatedCot()));
-            previewAoiCount.setText(String.valueOf(aois.size()));
-            
-            Log.d(TAG, "Preview stats updated - CoT: " + stats.getTotalCot() + 
-                  ", Updated: " + stats.getUpdatedCot() + ", AOIs: " + aois.size());
+            File directory = FileSystemUtils.getItem(
+                    FileSystemUtils.TOOL_DATA_DIRECTORY + File.separator + "omnicot");
+            File file = PluginMetrics.exportSnapshot(directory);
+            Trace.exportDump(directory);
+            Log.i(TAG, "Metrics exported to " + file);
+            AffiliationUpdater.showToast("Metrics exported to " + file.getName());
         } catch (Exception e) {
-            Log.e(TAG, "Error updating preview statistics", e);
+            Log.e(TAG, "Error exporting metrics", e);
+            AffiliationUpdater.showToast("Could not export metrics");
         }
     }
+
+    /**
+     * Update preview statistics on main dashboard
+     */
+    private void updatePreviewStats() {
+        // CoT statistics and AOI count arrive together in applyDashboardScan
+        requestRefresh(DashboardRefresher.REFRESH_ALL);
+    }
 }
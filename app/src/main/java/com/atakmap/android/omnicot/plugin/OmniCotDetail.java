@@ -0,0 +1,150 @@
+package com.atakmap.android.omnicot.plugin;
+
+import com.atakmap.android.maps.MapItem;
+import com.atakmap.android.maps.MapView;
+import com.atakmap.coremap.cot.event.CotDetail;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code <__omnicot>} CoT detail element describing a marker's last
+ * affiliation change. It replaces the text the plugin used to append to
+ * remarks, so its size stays fixed no matter how often a marker changes:
+ * <pre>
+ * &lt;__omnicot aff="h" prev="f" by="ALPHA-1" time="2026-10-18T12:00:00.000Z" hist="u1760780000"/&gt;
+ * </pre>
+ * {@code hist} is only present when history is enabled and holds at most
+ * {@link #MAX_HISTORY} earlier changes as affiliation code plus epoch
+ * seconds, newest first.
+ */
+public final class OmniCotDetail {
+
+    public static final String ELEMENT = "__omnicot";
+
+    /** Upper bound for the configurable history length */
+    public static final int MAX_HISTORY = 8;
+
+    // Last change, kept on the marker so every outbound event can carry it
+    private static final String META_AFFILIATION = "omnicot_last_aff";
+    private static final String META_PREVIOUS = "omnicot_prev_aff";
+    private static final String META_OPERATOR = "omnicot_last_by";
+    private static final String META_TIME = "omnicot_last_time";
+    private static final String META_HISTORY = "omnicot_history";
+
+    // Text older versions appended to remarks on every change
+    private static final Pattern LEGACY_REMARK = Pattern.compile(
+            "(^|;\\s*)Affiliation changed to \\w+ via OmniCOT plugin");
+
+    private static volatile int historySize = 0;
+
+    private OmniCotDetail() {
+    }
+
+    /**
+     * Set how many earlier changes the detail carries, 0 for none. Set from
+     * the change history setting on the CoT dashboard through OmniCotSettings.
+     */
+    public static void setHistorySize(int size) {
+        if (size < 0 || size > MAX_HISTORY) {
+            throw new IllegalArgumentException("History size must be 0 to " + MAX_HISTORY);
+        }
+        historySize = size;
+    }
+
+    public static int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Describe a change of the marker to a new type without applying it.
+     * Pass the result to {@link #store} once the change has been made.
+     * @return The change, or null if the new type is invalid
+     */
+    static AffiliationChange nextChange(MapItem mapItem, String newType) {
+        MapView mapView = MapView.getMapView();
+        String operator = mapView != null ? mapView.getDeviceCallsign() : null;
+        return AffiliationChange.next(readLast(mapItem), mapItem.getType(), newType,
+                operator, System.currentTimeMillis(), historySize);
+    }
+
+    /**
+     * Read the last change recorded on the marker
+     * @return The change, or null if the marker never changed
+     */
+    static AffiliationChange readLast(MapItem mapItem) {
+        String affiliation = mapItem.getMetaString(META_AFFILIATION, null);
+        if (affiliation == null || affiliation.isEmpty()) return null;
+
+        String previous = mapItem.getMetaString(META_PREVIOUS, null);
+        return new AffiliationChange(affiliation.charAt(0),
+                previous != null && !previous.isEmpty() ? previous.charAt(0) : affiliation.charAt(0),
+                mapItem.getMetaString(META_OPERATOR, ""),
+                mapItem.getMetaLong(META_TIME, 0),
+                mapItem.getMetaString(META_HISTORY, null));
+    }
+
+    /**
+     * Remember a change on the marker so later events carry it
+     */
+    static void store(MapItem mapItem, AffiliationChange change) {
+        mapItem.setMetaString(META_AFFILIATION, String.valueOf(change.getAffiliation()));
+        mapItem.setMetaString(META_PREVIOUS, String.valueOf(change.getPrevious()));
+        mapItem.setMetaString(META_OPERATOR, change.getOperator());
+        mapItem.setMetaLong(META_TIME, change.getTimeMillis());
+        if (change.getHistory() != null) {
+            mapItem.setMetaString(META_HISTORY, change.getHistory());
+        }
+    }
+
+    /**
+     * Put the marker's last recorded change into an event's detail
+     */
+    static void apply(CotDetail detail, MapItem mapItem) {
+        apply(detail, readLast(mapItem));
+    }
+
+    /**
+     * Put a change into an event's detail, replacing any existing OmniCOT
+     * element and removing text older versions appended to remarks
+     * @param change The change to describe, or null to add no element
+     */
+    static void apply(CotDetail detail, AffiliationChange change) {
+        CotDetail existing = detail.getFirstChildByName(0, ELEMENT);
+        if (existing != null) {
+            detail.removeChild(existing);
+        }
+
+        CotDetail remarks = detail.getFirstChildByName(0, "remarks");
+        if (remarks != null) {
+            String text = remarks.getInnerText();
+            String cleaned = stripLegacyRemarks(text);
+            if (cleaned != null && !cleaned.equals(text)) {
+                remarks.setInnerText(cleaned);
+            }
+        }
+
+        if (change == null) return;
+
+        CotDetail element = new CotDetail(ELEMENT);
+        for (Map.Entry<String, String> attribute
+                : change.toAttributes(historySize > 0).entrySet()) {
+            element.setAttribute(attribute.getKey(), attribute.getValue());
+        }
+        detail.addChild(element);
+    }
+
+    /**
+     * Remove the change notes older versions appended to remarks
+     */
+    static String stripLegacyRemarks(String remarks) {
+        if (remarks == null || remarks.isEmpty()) return remarks;
+        String stripped = LEGACY_REMARK.matcher(remarks).replaceAll("");
+
+        // Drop the separator left behind when the note was the first entry
+        if (stripped.startsWith(";")) {
+            stripped = stripped.substring(1);
+        }
+        return stripped.trim();
+    }
+}
@@ -0,0 +1,79 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.atakmap.android.maps.MapView;
+
+/**
+ * User settings shown on the CoT dashboard. Values are kept in ATAK's
+ * default shared preferences so they survive restarts, and are applied to
+ * the classes that use them when the plugin starts and whenever they change.
+ */
+public final class OmniCotSettings {
+    private static final String TAG = "OmniCotSettings";
+
+    static final String KEY_LEAN_EVENTS = "omnicot_lean_events";
+    static final String KEY_HISTORY_SIZE = "omnicot_history_size";
+
+    private OmniCotSettings() {
+    }
+
+    /**
+     * Apply the stored settings
+     */
+    public static void load() {
+        SharedPreferences prefs = getPreferences();
+        if (prefs == null) return;
+
+        AffiliationUpdater.setLeanEvents(prefs.getBoolean(KEY_LEAN_EVENTS, false));
+        int historySize = prefs.getInt(KEY_HISTORY_SIZE, 0);
+        OmniCotDetail.setHistorySize(Math.max(0, Math.min(OmniCotDetail.MAX_HISTORY, historySize)));
+        Log.d(TAG, "Settings loaded, lean events " + AffiliationUpdater.isLeanEvents()
+                + ", history " + OmniCotDetail.getHistorySize());
+    }
+
+    /**
+     * Send lean affiliation events, which are smaller on the network but
+     * carry only the marker's position, contact and archive details
+     */
+    public static void setLeanEvents(boolean leanEvents) {
+        AffiliationUpdater.setLeanEvents(leanEvents);
+
+        SharedPreferences prefs = getPreferences();
+        if (prefs != null) {
+            prefs.edit().putBoolean(KEY_LEAN_EVENTS, leanEvents).apply();
+        }
+    }
+
+    public static boolean isLeanEvents() {
+        return AffiliationUpdater.isLeanEvents();
+    }
+
+    /**
+     * Set how many earlier affiliation changes outbound events carry, 0 to
+     * {@link OmniCotDetail#MAX_HISTORY}
+     */
+    public static void setHistorySize(int historySize) {
+        OmniCotDetail.setHistorySize(historySize);
+
+        SharedPreferences prefs = getPreferences();
+        if (prefs != null) {
+            prefs.edit().putInt(KEY_HISTORY_SIZE, historySize).apply();
+        }
+    }
+
+    public static int getHistorySize() {
+        return OmniCotDetail.getHistorySize();
+    }
+
+    private static SharedPreferences getPreferences() {
+        MapView mapView = MapView.getMapView();
+        if (mapView == null || mapView.getContext() == null) {
+            Log.w(TAG, "MapView is not available, settings not stored");
+            return null;
+        }
+        return PreferenceManager.getDefaultSharedPreferences(mapView.getContext());
+    }
+}
@@ -0,0 +1,426 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import com.atakmap.coremap.cot.event.CotEvent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits outbound COT events with a token bucket and sends the most
+ * important ones first. Events wait in a bounded queue per priority class;
+ * a newer event for a UID that is still queued replaces the older one, and
+ * when the queue is full the oldest event of the lowest priority is dropped.
+ * Dropping an event that was already accepted is reported to the
+ * DropListener it was submitted with.
+ *
+ * The sending thread is stopped by {@link #shutdown()} and created again by
+ * {@link #start()}; events submitted in between are refused.
+ */
+public class OutboundCotScheduler {
+    private static final String TAG = "OutboundCotScheduler";
+
+    public static final double DEFAULT_RATE_PER_SECOND = 5.0;
+    public static final int DEFAULT_BURST = 10;
+    public static final int DEFAULT_CAPACITY = 500;
+
+    /**
+     * Priority classes, highest first
+     */
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW;
+
+        /**
+         * Hostile reclassifications go first and neutral ones last
+         */
+        public static Priority forAffiliation(AffiliationUpdater.Affiliation affiliation) {
+            switch (affiliation) {
+                case HOSTILE:
+                    return HIGH;
+                case NEUTRAL:
+                    return LOW;
+                default:
+                    return NORMAL;
+            }
+        }
+    }
+
+    /**
+     * Sends a single event on the network
+     */
+    public interface Sender {
+        void send(CotEvent event);
+    }
+
+    /**
+     * Told when an accepted event is evicted to make room for a more
+     * important one and will not be sent
+     */
+    public interface DropListener {
+        void onDropped(String uid, Priority priority);
+    }
+
+    private static class QueuedEvent {
+        final String uid;
+        final Priority priority;
+        final CotEvent event;
+        final DropListener dropListener;
+
+        QueuedEvent(String uid, Priority priority, CotEvent event, DropListener dropListener) {
+            this.uid = uid;
+            this.priority = priority;
+            this.event = event;
+            this.dropListener = dropListener;
+        }
+    }
+
+    private final Sender sender;
+    private ScheduledExecutorService executor;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // One queue per priority, keyed by UID so newer events replace older ones
+    private final List<LinkedHashMap<String, QueuedEvent>> queues = new ArrayList<>();
+    private int queuedSize;
+
+    private double ratePerSecond = DEFAULT_RATE_PER_SECOND;
+    private int burst = DEFAULT_BURST;
+    private int capacity = DEFAULT_CAPACITY;
+    private double tokens = DEFAULT_BURST;
+    private long lastRefillNanos = System.nanoTime();
+    private boolean drainScheduled;
+    private boolean shutDown;
+
+    private long queuedCount;
+    private long mergedCount;
+    private long sentCount;
+    private long droppedCount;
+
+    public OutboundCotScheduler(Sender sender) {
+        this.sender = sender;
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new LinkedHashMap<String, QueuedEvent>());
+        }
+        this.executor = createExecutor();
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "OmniCOT-outbound");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return pool;
+    }
+
+    /**
+     * Change the rate limit and queue size
+     * @param ratePerSecond Sustained events per second
+     * @param burst Events that may be sent back to back after an idle period
+     * @param capacity Maximum number of queued events
+     */
+    public void configure(double ratePerSecond, int burst, int capacity) {
+        if (ratePerSecond <= 0 || burst < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid scheduler configuration");
+        }
+        List<QueuedEvent> dropped = new ArrayList<>();
+        synchronized (this) {
+            refill();
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+            this.capacity = capacity;
+            this.tokens = Math.min(tokens, burst);
+            while (queuedSize > capacity) {
+                dropped.add(dropLowest());
+            }
+        }
+        for (QueuedEvent event : dropped) {
+            notifyDropped(event);
+        }
+    }
+
+    /**
+     * Queue an event for sending
+     * @param uid UID of the item the event describes
+     * @param priority Priority class of the event
+     * @param event The event
+     * @return false if the queue was full of more important events and
+     *         this one was dropped
+     */
+    public boolean submit(String uid, Priority priority, CotEvent event) {
+        return submit(uid, priority, event, null);
+    }
+
+    /**
+     * Queue an event for sending
+     * @param uid UID of the item the event describes
+     * @param priority Priority class of the event
+     * @param event The event
+     * @param dropListener Told if the event is accepted but later evicted, may be null
+     * @return false if the scheduler is shut down, or the queue was full of
+     *         more important events and this one was dropped
+     */
+    public boolean submit(String uid, Priority priority, CotEvent event,
+                          DropListener dropListener) {
+        QueuedEvent evicted = null;
+        synchronized (this) {
+            if (shutDown) {
+                Log.w(TAG, "Scheduler is shut down, refused event for " + uid);
+                return false;
+            }
+            queuedCount++;
+
+            // A newer event for the same UID replaces the queued one
+            QueuedEvent existing = remove(uid);
+            if (existing != null) {
+                mergedCount++;
+            } else if (queuedSize >= capacity) {
+                evicted = dropLowerThan(priority);
+                if (evicted == null) {
+                    droppedCount++;
+                    PluginMetrics.DISPATCH_FAILURES.increment();
+                    Log.w(TAG, "Outbound queue full, dropped event for " + uid);
+                    return false;
+                }
+            }
+
+            queues.get(priority.ordinal()).put(uid,
+                    new QueuedEvent(uid, priority, event, dropListener));
+            queuedSize++;
+        }
+
+        notifyDropped(evicted);
+        scheduleDrain(0);
+        return true;
+    }
+
+    /**
+     * Send everything that is queued right away, ignoring the rate limit
+     */
+    public void flush() {
+        List<QueuedEvent> events = new ArrayList<>();
+        synchronized (this) {
+            for (LinkedHashMap<String, QueuedEvent> queue : queues) {
+                events.addAll(queue.values());
+                queue.clear();
+            }
+            queuedSize = 0;
+        }
+
+        for (QueuedEvent queued : events) {
+            send(queued);
+        }
+    }
+
+    /**
+     * Start sending again after {@link #shutdown()}. Does nothing if the
+     * scheduler is running.
+     */
+    public synchronized void start() {
+        if (!shutDown) return;
+
+        shutDown = false;
+        executor = createExecutor();
+        drainScheduled = false;
+        if (queuedSize > 0) {
+            scheduleDrainLocked(0);
+        }
+    }
+
+    /**
+     * Stop the sending thread and refuse new events until {@link #start()}.
+     * Events still queued stay queued; call {@link #flush()} first to send them.
+     */
+    public void shutdown() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            if (shutDown) return;
+            shutDown = true;
+            stopped = executor;
+        }
+        stopped.shutdownNow();
+    }
+
+    public synchronized boolean isShutDown() {
+        return shutDown;
+    }
+
+    private void drain() {
+        while (true) {
+            QueuedEvent next;
+            synchronized (this) {
+                drainScheduled = false;
+                if (queuedSize == 0) return;
+
+                refill();
+                if (tokens < 1.0) {
+                    long waitNanos = (long) ((1.0 - tokens) / ratePerSecond * 1e9);
+                    scheduleDrainLocked(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+                    return;
+                }
+
+                tokens -= 1.0;
+                next = takeNext();
+            }
+            send(next);
+        }
+    }
+
+    private void send(QueuedEvent queued) {
+        try {
+            sender.send(queued.event);
+            synchronized (this) {
+                sentCount++;
+            }
+        } catch (Exception e) {
+            PluginMetrics.DISPATCH_FAILURES.increment();
+            Log.e(TAG, "Error sending event for " + queued.uid, e);
+        }
+    }
+
+    private void scheduleDrain(long delayMs) {
+        synchronized (this) {
+            scheduleDrainLocked(delayMs);
+        }
+    }
+
+    private void scheduleDrainLocked(long delayMs) {
+        if (drainScheduled || shutDown) return;
+        try {
+            executor.schedule(drainTask, delayMs, TimeUnit.MILLISECONDS);
+            drainScheduled = true;
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "Scheduler is shut down");
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * ratePerSecond);
+        lastRefillNanos = now;
+    }
+
+    private QueuedEvent takeNext() {
+        for (LinkedHashMap<String, QueuedEvent> queue : queues) {
+            Iterator<QueuedEvent> it = queue.values().iterator();
+            if (it.hasNext()) {
+                QueuedEvent next = it.next();
+                it.remove();
+                queuedSize--;
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private QueuedEvent remove(String uid) {
+        for (LinkedHashMap<String, QueuedEvent> queue : queues) {
+            QueuedEvent removed = queue.remove(uid);
+            if (removed != null) {
+                queuedSize--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop the oldest event of a lower priority than the given one
+     * @return The dropped event, or null if every queued event is at least as important
+     */
+    private QueuedEvent dropLowerThan(Priority priority) {
+        for (int p = queues.size() - 1; p > priority.ordinal(); p--) {
+            QueuedEvent dropped = dropOldest(queues.get(p));
+            if (dropped != null) return dropped;
+        }
+        return null;
+    }
+
+    private QueuedEvent dropLowest() {
+        for (int p = queues.size() - 1; p >= 0; p--) {
+            QueuedEvent dropped = dropOldest(queues.get(p));
+            if (dropped != null) return dropped;
+        }
+        return null;
+    }
+
+    private QueuedEvent dropOldest(LinkedHashMap<String, QueuedEvent> queue) {
+        Iterator<QueuedEvent> it = queue.values().iterator();
+        if (!it.hasNext()) return null;
+
+        QueuedEvent dropped = it.next();
+        it.remove();
+        queuedSize--;
+        droppedCount++;
+        PluginMetrics.DISPATCH_FAILURES.increment();
+        Log.w(TAG, "Outbound queue full, dropped " + dropped.priority
+                + " event for " + dropped.uid);
+        return dropped;
+    }
+
+    /**
+     * Tell the submitter of an accepted event that it was dropped. Called
+     * without holding the lock so the listener may submit again.
+     */
+    private void notifyDropped(QueuedEvent dropped) {
+        if (dropped == null || dropped.dropListener == null) return;
+        try {
+            dropped.dropListener.onDropped(dropped.uid, dropped.priority);
+        } catch (Exception e) {
+            Log.e(TAG, "Error reporting dropped event for " + dropped.uid, e);
+        }
+    }
+
+    public synchronized int getQueuedSize() {
+        return queuedSize;
+    }
+
+    /**
+     * Number of events submitted
+     */
+    public synchronized long getQueuedCount() {
+        return queuedCount;
+    }
+
+    /**
+     * Number of events that replaced a queued event for the same UID
+     */
+    public synchronized long getMergedCount() {
+        return mergedCount;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+                "queued %d, merged %d, sent %d, dropped %d, waiting %d",
+                queuedCount, mergedCount, sentCount, droppedCount, queuedSize);
+    }
+}
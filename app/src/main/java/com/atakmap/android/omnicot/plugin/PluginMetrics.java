@@ -0,0 +1,218 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters for the plugin's hot paths, shown in
+ * the CoT dashboard's diagnostics section and exportable as a text file
+ */
+public final class PluginMetrics {
+
+    /**
+     * Monotonic event counter
+     */
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+    }
+
+    private static final List<LatencyHistogram> histograms = new ArrayList<>();
+    private static final List<Counter> counters = new ArrayList<>();
+
+    // One-off startup durations in nanoseconds, in the order first recorded
+    private static final Map<String, Long> startupStages = new LinkedHashMap<>();
+
+    /** Map walk that counts CoT statistics */
+    public static final LatencyHistogram STATISTICS_TRAVERSAL = histogram("statistics.traversal");
+    /** Map walk or registry read that gathers AOIs */
+    public static final LatencyHistogram AOI_TRAVERSAL = histogram("aoi.traversal");
+    /** Whole of AffiliationUpdater.updateAffiliation */
+    public static final LatencyHistogram AFFILIATION_UPDATE = histogram("affiliation.update");
+    /** Building the outbound COT event */
+    public static final LatencyHistogram AFFILIATION_BUILD = histogram("affiliation.build");
+    /** Handing an event to the COT dispatcher */
+    public static final LatencyHistogram AFFILIATION_DISPATCH = histogram("affiliation.dispatch");
+    /** Building a lean event, for sampled events only */
+    public static final LatencyHistogram EVENT_BUILD_LEAN = histogram("event.build.lean");
+    /** Building the full event for the same sampled events */
+    public static final LatencyHistogram EVENT_BUILD_FULL = histogram("event.build.full");
+    /** Persisting the updated marker */
+    public static final LatencyHistogram AFFILIATION_PERSIST = histogram("affiliation.persist");
+    /** Writing one batch of dirty markers */
+    public static final LatencyHistogram PERSIST_FLUSH = histogram("persist.flush");
+    /** AffiliationMenuFactory.create */
+    public static final LatencyHistogram MENU_BUILD = histogram("menu.build");
+
+    /** Events that were dropped or failed to dispatch */
+    public static final Counter DISPATCH_FAILURES = counter("dispatch.failures");
+    /** Lean events compared against the full event */
+    public static final Counter EVENT_SIZE_SAMPLES = counter("event.samples");
+    /** Serialized size of the sampled lean events */
+    public static final Counter EVENT_BYTES_LEAN = counter("event.bytes.lean");
+    /** Serialized size of the full events built for the same samples */
+    public static final Counter EVENT_BYTES_FULL = counter("event.bytes.full");
+    /** Batches written by the write-behind persister */
+    public static final Counter PERSIST_BATCHES = counter("persist.batches");
+    /** Markers written by the write-behind persister; divide by batches for the mean batch size */
+    public static final Counter PERSISTED_ITEMS = counter("persist.items");
+
+    private PluginMetrics() {
+    }
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(name);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    public static List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(histograms);
+    }
+
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(counters);
+    }
+
+    /**
+     * Record how long a startup stage took, replacing an earlier value
+     */
+    public static void recordStartupStage(String name, long nanos) {
+        synchronized (startupStages) {
+            startupStages.put(name, nanos);
+        }
+    }
+
+    public static Map<String, Long> getStartupStages() {
+        synchronized (startupStages) {
+            return new LinkedHashMap<>(startupStages);
+        }
+    }
+
+    /**
+     * Short summary for the dashboard, one line per metric with samples
+     */
+    public static String formatSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (LatencyHistogram histogram : histograms) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) continue;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.US, "%-20s p50 %7.2f  p95 %7.2f  p99 %7.2f ms",
+                    snapshot.getName(), snapshot.getP50Nanos() / 1e6,
+                    snapshot.getP95Nanos() / 1e6, snapshot.getP99Nanos() / 1e6));
+        }
+        for (Counter counter : counters) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.US, "%-20s %d", counter.getName(), counter.get()));
+        }
+        for (Map.Entry<String, Long> stage : getStartupStages().entrySet()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format(Locale.US, "%-20s %7.2f ms",
+                    "startup." + stage.getKey(), stage.getValue() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Full snapshot of every metric, including empty ones
+     */
+    public static String formatSnapshot() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# OmniCOT metrics ")
+                .append(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US).format(new Date()))
+                .append('\n');
+        sb.append("# name,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms\n");
+        for (LatencyHistogram histogram : histograms) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            sb.append(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                    s.getName(), s.getCount(), s.getMeanNanos() / 1e6, s.getP50Nanos() / 1e6,
+                    s.getP95Nanos() / 1e6, s.getP99Nanos() / 1e6, s.getMaxNanos() / 1e6));
+        }
+        sb.append("# counter,value\n");
+        for (Counter counter : counters) {
+            sb.append(counter.getName()).append(',').append(counter.get()).append('\n');
+        }
+        sb.append("# startup_stage,ms\n");
+        for (Map.Entry<String, Long> stage : getStartupStages().entrySet()) {
+            sb.append(String.format(Locale.US, "%s,%.3f\n", stage.getKey(), stage.getValue() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a snapshot to a new timestamped file
+     * @param directory Directory to write into, created if missing
+     * @return The file written
+     */
+    public static File exportSnapshot(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "omnicot_metrics_" + stamp + ".csv");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(formatSnapshot());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Clear every histogram and counter. Startup stages only happen once
+     * and are kept.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (Counter counter : counters) {
+            counter.reset();
+        }
+    }
+}
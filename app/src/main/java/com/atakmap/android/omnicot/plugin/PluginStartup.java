@@ -0,0 +1,109 @@
+package com.atakmap.android.omnicot.plugin;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the plugin's heavier initialization in named stages on a background
+ * thread, so ATAK's plugin loading is not held up by work the user does not
+ * need yet. Each stage is timed into PluginMetrics' startup breakdown.
+ */
+public class PluginStartup {
+    private static final String TAG = "PluginStartup";
+
+    // How long onStop waits for a stage that is already running
+    private static final long CANCEL_TIMEOUT_MS = 2000;
+
+    private static class Stage {
+        final String name;
+        final Runnable task;
+
+        Stage(String name, Runnable task) {
+            this.name = name;
+            this.task = task;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private ExecutorService executor;
+    private volatile boolean cancelled;
+
+    /**
+     * Add a stage; stages run one after another in the order added
+     */
+    public PluginStartup addStage(String name, Runnable task) {
+        stages.add(new Stage(name, task));
+        return this;
+    }
+
+    /**
+     * Start running the stages in the background
+     */
+    public synchronized void start() {
+        if (executor != null) return;
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "OmniCOT-init");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runStages();
+            }
+        });
+        executor.shutdown();
+    }
+
+    /**
+     * Skip any stages not yet run and wait for the current one to finish, so
+     * the caller can safely tear down what the finished stages started
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (executor == null) return;
+
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(CANCEL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Startup stage still running after " + CANCEL_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runStages() {
+        long begin = System.nanoTime();
+        for (Stage stage : stages) {
+            if (cancelled) {
+                Log.d(TAG, "Startup cancelled before " + stage.name);
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                stage.task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Startup stage " + stage.name + " failed", e);
+            }
+            long elapsed = System.nanoTime() - start;
+            PluginMetrics.recordStartupStage(stage.name, elapsed);
+            Log.d(TAG, "Startup stage " + stage.name + " took " + elapsed / 1000000 + " ms");
+        }
+
+        long total = System.nanoTime() - begin;
+        PluginMetrics.recordStartupStage("background.total", total);
+        Log.i(TAG, "Background startup finished in " + total / 1000000 + " ms");
+    }
+}
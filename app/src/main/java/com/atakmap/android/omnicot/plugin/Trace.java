@@ -0,0 +1,185 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Structured trace events recorded into a fixed-size ring buffer of
+ * primitives instead of building log strings. Recording allocates nothing;
+ * when an event's level is disabled it costs a single branch. The buffer
+ * keeps the most recent events and is only formatted when dumped.
+ */
+public final class Trace {
+
+    /** Levels, from least to most verbose */
+    public static final int OFF = 0;
+    public static final int INFO = 1;
+    public static final int DEBUG = 2;
+
+    /** Event IDs; arguments are listed in EVENT_FORMATS */
+    public static final int STATISTICS_CALCULATED = 0;
+    public static final int STATISTICS_AFFILIATIONS = 1;
+    public static final int ITEM_MARKED_UPDATED = 2;
+    public static final int MENU_CREATED = 3;
+    public static final int DASHBOARD_TRAVERSAL = 4;
+    public static final int SPATIAL_INDEX_BUILT = 5;
+    public static final int AOIS_REJOINED = 6;
+    public static final int AOI_LIST_CHANGED = 7;
+    public static final int PERSIST_FLUSHED = 8;
+    public static final int LEAN_EVENT_SAMPLED = 9;
+
+    private static final String[] EVENT_FORMATS = {
+            "statistics total=%d updated=%d traversal_ns=%d",
+            "statistics unknown=%d neutral=%d friendly=%d hostile=%d",
+            "marked updated uid_hash=%08x",
+            "menu created uid_hash=%08x",
+            "dashboard traversal items=%d groups=%d ns=%d",
+            "spatial index aois=%d depth=%d",
+            "aois rejoined markers=%d aois=%d",
+            "aoi list removed=%d inserted=%d reordered=%d",
+            "persist flush items=%d failed=%d ns=%d",
+            "lean event bytes=%d full_bytes=%d ns=%d full_ns=%d"
+    };
+
+    // Power of two so the slot is a mask of the sequence number
+    static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    private static volatile int level = INFO;
+
+    private static final AtomicLong cursor = new AtomicLong();
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final long[] times = new long[CAPACITY];
+    private static final long[] threads = new long[CAPACITY];
+    private static final int[] events = new int[CAPACITY];
+    private static final long[] args = new long[CAPACITY * 4];
+
+    private Trace() {
+    }
+
+    public static void setLevel(int newLevel) {
+        level = newLevel;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * True if events of the given level are recorded
+     */
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel <= level;
+    }
+
+    public static void record(int eventLevel, int event, long a) {
+        if (eventLevel > level) return;
+        write(event, a, 0, 0, 0);
+    }
+
+    public static void record(int eventLevel, int event, long a, long b) {
+        if (eventLevel > level) return;
+        write(event, a, b, 0, 0);
+    }
+
+    public static void record(int eventLevel, int event, long a, long b, long c) {
+        if (eventLevel > level) return;
+        write(event, a, b, c, 0);
+    }
+
+    public static void record(int eventLevel, int event, long a, long b, long c, long d) {
+        if (eventLevel > level) return;
+        write(event, a, b, c, d);
+    }
+
+    private static void write(int event, long a, long b, long c, long d) {
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+
+        // Clear the slot first; together with the re-check in dump this makes a
+        // half-overwritten slot unlikely, not impossible, to be printed
+        sequences.set(slot, 0);
+        times[slot] = System.currentTimeMillis();
+        threads[slot] = Thread.currentThread().getId();
+        events[slot] = event;
+        int base = slot * 4;
+        args[base] = a;
+        args[base + 1] = b;
+        args[base + 2] = c;
+        args[base + 3] = d;
+
+        // Published last with release semantics, so a dump that reads this
+        // sequence also sees the fields written above
+        sequences.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Number of events recorded since start, including overwritten ones
+     */
+    public static long getRecordedCount() {
+        return cursor.get();
+    }
+
+    /**
+     * Format the buffered events, oldest first
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        long end = cursor.get();
+        long start = Math.max(0, end - CAPACITY);
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (sequences.get(slot) != sequence + 1) continue;
+
+            int event = events[slot];
+            int base = slot * 4;
+            long time = times[slot];
+            long thread = threads[slot];
+            long a = args[base];
+            long b = args[base + 1];
+            long c = args[base + 2];
+            long d = args[base + 3];
+
+            // Best effort: skip the slot if a writer took it over while it was read
+            if (sequences.get(slot) != sequence + 1) continue;
+
+            String format = event >= 0 && event < EVENT_FORMATS.length
+                    ? EVENT_FORMATS[event] : "event " + event + " %d %d %d %d";
+            sb.append(timeFormat.format(new Date(time)))
+                    .append(" [").append(thread).append("] ")
+                    .append(String.format(Locale.US, format, a, b, c, d))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the buffered events to a new timestamped file
+     * @param directory Directory to write into, created if missing
+     * @return The file written
+     */
+    public static File exportDump(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(directory, "omnicot_trace_" + stamp + ".txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(dump());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,58 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+public class AffiliationChangeTest {
+
+    @Test
+    public void firstChangeDescribesTheNewType() {
+        AffiliationChange change = AffiliationChange.next(null, "a-f-G-U-C", "a-h-G-U-C",
+                "ALPHA-1", 1760780000000L, 0);
+
+        Map<String, String> attributes = change.toAttributes(true);
+        assertEquals("h", attributes.get("aff"));
+        assertEquals("f", attributes.get("prev"));
+        assertEquals("ALPHA-1", attributes.get("by"));
+        assertEquals("2025-10-18T09:33:20.000Z", attributes.get("time"));
+        assertFalse(attributes.containsKey("hist"));
+    }
+
+    @Test
+    public void laterChangeDescribesTheNewTypeNotTheLastOne() {
+        AffiliationChange first = AffiliationChange.next(null, "a-u-G", "a-f-G",
+                "ALPHA-1", 1000000L, 2);
+        AffiliationChange second = AffiliationChange.next(first, "a-f-G", "a-n-G",
+                "BRAVO-2", 2000000L, 2);
+
+        Map<String, String> attributes = second.toAttributes(true);
+        assertEquals("n", attributes.get("aff"));
+        assertEquals("f", attributes.get("prev"));
+        assertEquals("BRAVO-2", attributes.get("by"));
+        assertEquals("f1000", attributes.get("hist"));
+        assertFalse(second.toAttributes(false).containsKey("hist"));
+    }
+
+    @Test
+    public void invalidTypes() {
+        assertNull(AffiliationChange.next(null, "a-f-G", "a", "ALPHA-1", 0, 0));
+
+        AffiliationChange change = AffiliationChange.next(null, null, "a-h-G", "ALPHA-1", 0, 0);
+        assertEquals('u', change.getPrevious());
+    }
+
+    @Test
+    public void historyIsBoundedNewestFirst() {
+        String history = null;
+        history = AffiliationChange.appendHistory(history, 'u', 100, 3);
+        history = AffiliationChange.appendHistory(history, 'f', 200, 3);
+        history = AffiliationChange.appendHistory(history, 'h', 300, 3);
+        history = AffiliationChange.appendHistory(history, 'n', 400, 3);
+        assertEquals("n400 h300 f200", history);
+
+        assertEquals("u100", AffiliationChange.appendHistory("f200 h300", 'u', 100, 1));
+    }
+}
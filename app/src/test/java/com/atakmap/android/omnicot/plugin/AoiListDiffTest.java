@@ -0,0 +1,52 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AoiListDiffTest {
+
+    @Test
+    public void identicalListsAreNotStructural() {
+        List<String> uids = Arrays.asList("a", "b", "c");
+        AoiListDiff diff = AoiListDiff.compute(uids, new ArrayList<>(uids));
+        assertFalse(diff.isStructural());
+    }
+
+    @Test
+    public void deletingOneRowOnlyRemovesIt() {
+        List<String> oldUids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) oldUids.add("aoi-" + i);
+        List<String> newUids = new ArrayList<>(oldUids);
+        newUids.remove(500);
+
+        AoiListDiff diff = AoiListDiff.compute(oldUids, newUids);
+        assertEquals(Arrays.asList("aoi-500"), diff.getRemoved());
+        assertTrue(diff.getInserted().isEmpty());
+        assertFalse(diff.isReordered());
+    }
+
+    @Test
+    public void findsInsertsAndReordering() {
+        AoiListDiff diff = AoiListDiff.compute(
+                Arrays.asList("a", "b", "c", "d", "e"),
+                Arrays.asList("b", "c", "x", "d", "a", "e"));
+        assertEquals(Arrays.asList("x"), diff.getInserted());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertTrue(diff.isReordered());
+    }
+
+    @Test
+    public void insertsAloneDoNotReorder() {
+        AoiListDiff diff = AoiListDiff.compute(
+                Arrays.asList("a", "b", "c"),
+                Arrays.asList("x", "a", "b", "y", "c"));
+        assertEquals(Arrays.asList("x", "y"), diff.getInserted());
+        assertFalse(diff.isReordered());
+        assertTrue(diff.isStructural());
+    }
+}
@@ -0,0 +1,80 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Traversal visitor that measures every shape of a {@link MapModel} with
+ * the same geodesic and geometry code the live AOIs use, and indexes them
+ * for containment queries. The live AOI path works on ATAK shapes through
+ * AoiRegistry and AoiManager, not through this class.
+ */
+public class AoiModelCollector<I> implements MapModelTraversal.Visitor<I> {
+
+    private final MapModel<?, I> model;
+    private final List<String> uids = new ArrayList<>();
+    private final List<AoiGeometry> geometries = new ArrayList<>();
+    private double[] areas = new double[64];
+
+    public AoiModelCollector(MapModel<?, I> model) {
+        this.model = model;
+    }
+
+    @Override
+    public String getName() {
+        return "AOIs";
+    }
+
+    @Override
+    public void visit(I item) {
+        if (!model.isShape(item)) return;
+
+        double[] coordinates = model.getShapeCoordinates(item);
+        if (coordinates == null || coordinates.length < 6) return;
+
+        int n = coordinates.length / 2;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = coordinates[i * 2];
+            lons[i] = coordinates[i * 2 + 1];
+        }
+
+        String uid = model.getUid(item);
+        int index = uids.size();
+        if (index == areas.length) {
+            double[] grown = new double[areas.length * 2];
+            System.arraycopy(areas, 0, grown, 0, areas.length);
+            areas = grown;
+        }
+        areas[index] = GeodesicArea.polygonArea(lats, lons);
+        uids.add(uid);
+        geometries.add(AoiGeometry.polygon(uid, lats, lons));
+    }
+
+    public int size() {
+        return uids.size();
+    }
+
+    public String getUid(int index) {
+        return uids.get(index);
+    }
+
+    /**
+     * Area of the AOI at an index in square meters
+     */
+    public double getArea(int index) {
+        return areas[index];
+    }
+
+    public List<AoiGeometry> getGeometries() {
+        return geometries;
+    }
+
+    /**
+     * Build a spatial index over the collected AOIs, keyed by UID
+     */
+    public AoiSpatialIndex<String> buildIndex() {
+        return AoiSpatialIndex.build(geometries, uids);
+    }
+}
@@ -0,0 +1,68 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AoiSpatialIndexTest {
+
+    private static AoiGeometry square(String uid, double lat, double lon, double size) {
+        return AoiGeometry.polygon(uid,
+                new double[] { lat, lat, lat + size, lat + size },
+                new double[] { lon, lon + size, lon + size, lon });
+    }
+
+    @Test
+    public void findsContainingPolygonsAndCircles() {
+        List<AoiGeometry> geometries = new ArrayList<>();
+        geometries.add(square("a", 10.0, 20.0, 1.0));
+        geometries.add(square("b", 10.5, 20.5, 1.0));
+        geometries.add(AoiGeometry.circle("c", 40.0, -75.0, 1000.0));
+        List<String> uids = new ArrayList<>();
+        for (AoiGeometry g : geometries) uids.add(g.getUid());
+
+        AoiSpatialIndex<String> index = AoiSpatialIndex.build(geometries, uids);
+
+        assertEquals(1, index.findContaining(10.2, 20.2).size());
+        assertEquals(2, index.findContaining(10.7, 20.7).size());
+        assertEquals("c", index.findContaining(40.005, -75.0).get(0));
+        assertTrue(index.findContaining(40.02, -75.0).isEmpty());
+        assertTrue(index.findContaining(0.0, 0.0).isEmpty());
+    }
+
+    @Test
+    public void refinesConcavePolygons() {
+        // L-shaped polygon whose bounding box covers the empty corner
+        AoiGeometry shape = AoiGeometry.polygon("l",
+                new double[] { 0, 0, 1, 1, 2, 2 },
+                new double[] { 0, 2, 2, 1, 1, 0 });
+        assertTrue(shape.contains(0.5, 1.5));
+        assertTrue(shape.contains(1.5, 0.5));
+        assertFalse(shape.contains(1.5, 1.5));
+    }
+
+    @Test
+    public void matchesLinearScanOnLargeGrid() {
+        List<AoiGeometry> geometries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 50; j++) {
+                geometries.add(square(i + ":" + j, i * 0.1, j * 0.1, 0.15));
+            }
+        }
+        AoiSpatialIndex<AoiGeometry> index = AoiSpatialIndex.build(geometries, geometries);
+        assertTrue(index.getDepth() > 1);
+
+        for (double lat = -0.05; lat < 5.2; lat += 0.137) {
+            for (double lon = -0.05; lon < 5.2; lon += 0.173) {
+                int expected = 0;
+                for (AoiGeometry g : geometries) {
+                    if (g.contains(lat, lon)) expected++;
+                }
+                assertEquals(expected, index.findContaining(lat, lon).size());
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CotTypeCodecTest {
+
+    @Test
+    public void parsesAffiliationAndBattleDimension() {
+        CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe("a-h-G-E-V-A");
+        assertTrue(descriptor.isValid());
+        assertEquals('h', descriptor.getAffiliation());
+        assertEquals('G', descriptor.getBattleDimension());
+        assertFalse(descriptor.isNonCot());
+        assertNull(descriptor.getShapeKind());
+    }
+
+    @Test
+    public void classifiesNonCotTypes() {
+        assertTrue(CotTypeCodec.describe("u-d-r").isNonCot());
+        assertTrue(CotTypeCodec.describe("b-m-p-s-p-loc").isNonCot());
+        assertTrue(CotTypeCodec.describe("u-rb-a").isNonCot());
+        assertEquals("Rectangle", CotTypeCodec.describe("u-d-r").getShapeKind());
+        assertEquals("Circle", CotTypeCodec.describe("u-d-c-c").getShapeKind());
+        assertEquals("Freehand", CotTypeCodec.describe("u-d-f").getShapeKind());
+    }
+
+    @Test
+    public void handlesInvalidTypes() {
+        assertFalse(CotTypeCodec.describe(null).isValid());
+        assertFalse(CotTypeCodec.describe("a-").isValid());
+        assertNull(CotTypeCodec.describe("a-").withAffiliation('h'));
+    }
+
+    @Test
+    public void cachesDescriptorsAndRewrittenTypes() {
+        CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe("a-u-G");
+        assertSame(descriptor, CotTypeCodec.describe(new String("a-u-G")));
+
+        String hostile = descriptor.withAffiliation('h');
+        assertEquals("a-h-G", hostile);
+        assertSame(hostile, descriptor.withAffiliation('h'));
+        assertSame(descriptor.getType(), descriptor.withAffiliation('u'));
+    }
+}
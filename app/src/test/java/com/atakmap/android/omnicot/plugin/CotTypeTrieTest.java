@@ -0,0 +1,56 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class CotTypeTrieTest {
+
+    @Test
+    public void countsEveryWholeSegmentPrefix() {
+        CotTypeTrie trie = new CotTypeTrie();
+        trie.add("a-h-G-E-V-A");
+        trie.add("a-h-G-E-V-A");
+        trie.add("a-h-G-U-C");
+        trie.add("a-h-A");
+        trie.add("a-f-G");
+
+        assertEquals(5, trie.size());
+        assertEquals(5, trie.count(""));
+        assertEquals(5, trie.count("a"));
+        assertEquals(4, trie.count("a-h"));
+        assertEquals(3, trie.count("a-h-G"));
+        assertEquals(2, trie.count("a-h-G-E-V-A"));
+        assertEquals(0, trie.count("a-h-G-E-V-A-T"));
+        // Prefixes match whole segments only
+        assertEquals(0, trie.count("a-h-G-E-V-"));
+
+        List<CotTypeTrie.Entry> children = trie.children("a-h");
+        assertEquals(2, children.size());
+        assertEquals("a-h-G", children.get(0).getPrefix());
+        assertEquals(3, children.get(0).getCount());
+        assertEquals("A", children.get(1).getSegment());
+    }
+
+    @Test
+    public void removingPrunesEmptyBranches() {
+        CotTypeTrie trie = new CotTypeTrie();
+        trie.add("a-h-G-E-V-A");
+        trie.add("a-h-A");
+
+        trie.remove("a-h-G-E-V-A");
+        assertEquals(1, trie.count("a-h"));
+        assertEquals(0, trie.count("a-h-G"));
+        assertEquals(1, trie.children("a-h").size());
+
+        // Never added, so nothing changes
+        trie.remove("a-n-G");
+        assertEquals(1, trie.size());
+
+        trie.remove("a-h-A");
+        assertEquals(0, trie.size());
+        assertTrue(trie.children("").isEmpty());
+    }
+}
@@ -0,0 +1,42 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GeodesicAreaTest {
+
+    @Test
+    public void oneDegreeCellAtEquator() {
+        double[] lats = {0, 0, 1, 1};
+        double[] lons = {0, 1, 1, 0};
+        assertEquals(12308.78e6, GeodesicArea.polygonArea(lats, lons), 0.01e6);
+
+        // Winding must not matter
+        double[] revLats = {1, 1, 0, 0};
+        double[] revLons = {0, 1, 1, 0};
+        assertEquals(GeodesicArea.polygonArea(lats, lons),
+                GeodesicArea.polygonArea(revLats, revLons), 1e-3);
+    }
+
+    @Test
+    public void oneDegreeCellAtSixtyNorth() {
+        double[] lats = {60, 60, 61, 61};
+        double[] lons = {0, 1, 1, 0};
+        assertEquals(6122.94e6, GeodesicArea.polygonArea(lats, lons), 0.01e6);
+    }
+
+    @Test
+    public void vincentyDistance() {
+        // Land's End to John o'Groats
+        double d = GeodesicArea.distance(50.06632, -5.71475, 58.64402, -3.07009);
+        assertEquals(969954.166, d, 0.01);
+        assertEquals(0.0, GeodesicArea.distance(10, 20, 10, 20), 0.0);
+    }
+
+    @Test
+    public void smallCircleMatchesPlaneGeometry() {
+        assertEquals(Math.PI * 1e6, GeodesicArea.circleArea(1000), 1.0);
+        assertEquals(2 * Math.PI * 1000, GeodesicArea.circlePerimeter(1000), 1e-3);
+    }
+}
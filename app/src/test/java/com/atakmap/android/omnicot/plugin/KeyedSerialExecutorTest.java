@@ -0,0 +1,95 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void runsTasksInOrderPerKey() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test", 4, 10000);
+        final List<List<Integer>> seen = new ArrayList<>();
+        for (int k = 0; k < 8; k++) {
+            seen.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            final int key = i % 8;
+            final int value = i;
+            assertTrue(executor.submit("uid-" + key, new Runnable() {
+                @Override
+                public void run() {
+                    seen.get(key).add(value);
+                }
+            }));
+        }
+
+        assertTrue(executor.awaitIdle(5000));
+        for (int k = 0; k < 8; k++) {
+            List<Integer> values = seen.get(k);
+            assertEquals(125, values.size());
+            for (int j = 0; j < values.size(); j++) {
+                assertEquals(k + j * 8, (int) values.get(j));
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void refusesTasksBeyondCapacity() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test", 1, 3);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        assertTrue(executor.submit("a", blocked));
+        assertTrue(executor.submit("a", blocked));
+        assertTrue(executor.submit("b", blocked));
+        assertFalse(executor.submit("c", blocked));
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        assertTrue(executor.awaitIdle(5000));
+        assertTrue(executor.submit("c", blocked));
+        assertTrue(executor.awaitIdle(5000));
+        executor.shutdown();
+    }
+
+    @Test
+    public void errorInATaskDoesNotStallTheKey() throws Exception {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor("test", 1, 10);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        assertTrue(executor.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new AssertionError("task failed");
+            }
+        }));
+        assertTrue(executor.submit("a", new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }));
+
+        assertTrue(executor.awaitIdle(5000));
+        assertEquals(0, ran.getCount());
+        assertEquals(1, executor.getFailedCount());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,35 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long value = 0; value < 1 << 16; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+            assertTrue(LatencyHistogram.bucketLowerBound(index + 1) > value);
+        }
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500000, snapshot.getP50Nanos(), 500000 * 0.125);
+        assertEquals(950000, snapshot.getP95Nanos(), 950000 * 0.125);
+        assertEquals(990000, snapshot.getP99Nanos(), 990000 * 0.125);
+        assertEquals(1000000, snapshot.getMaxNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+}
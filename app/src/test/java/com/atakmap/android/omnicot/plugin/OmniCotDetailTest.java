@@ -0,0 +1,21 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class OmniCotDetailTest {
+
+    @Test
+    public void stripsRemarksAppendedByOlderVersions() {
+        assertEquals("Seen near bridge", OmniCotDetail.stripLegacyRemarks(
+                "Seen near bridge; Affiliation changed to Hostile via OmniCOT plugin"
+                        + "; Affiliation changed to Friendly via OmniCOT plugin"));
+        assertEquals("", OmniCotDetail.stripLegacyRemarks(
+                "Affiliation changed to Neutral via OmniCOT plugin"));
+        assertEquals("Checkpoint", OmniCotDetail.stripLegacyRemarks(
+                "Affiliation changed to Unknown via OmniCOT plugin; Checkpoint"));
+        assertEquals("Plain remark", OmniCotDetail.stripLegacyRemarks("Plain remark"));
+        assertNull(OmniCotDetail.stripLegacyRemarks(null));
+    }
+}
@@ -0,0 +1,277 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory {@link MapModel} with a generated group hierarchy, so map
+ * traversal, statistics and AOI code can be load tested on a plain JVM.
+ * Generation is deterministic for a given seed and records the expected
+ * statistics as it goes.
+ */
+public class SimulatedMap implements MapModel<SimulatedMap.Group, SimulatedMap.Item> {
+
+    public static class Group {
+        final String name;
+        final List<Item> items = new ArrayList<>();
+        final List<Group> children = new ArrayList<>();
+
+        Group(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Item {
+        final String uid;
+        final String type;
+        final boolean marker;
+        final boolean updated;
+        final double lat;
+        final double lon;
+        final double[] coordinates;
+
+        Item(String uid, String type, boolean marker, boolean updated,
+             double lat, double lon, double[] coordinates) {
+            this.uid = uid;
+            this.type = type;
+            this.marker = marker;
+            this.updated = updated;
+            this.lat = lat;
+            this.lon = lon;
+            this.coordinates = coordinates;
+        }
+    }
+
+    /**
+     * Configures and generates a simulated map
+     */
+    public static class Builder {
+        private long seed = 1L;
+        private int depth = 4;
+        private int fanout = 4;
+        private int markers = 1000;
+        private int shapes = 50;
+        private int minVertices = 4;
+        private int maxVertices = 32;
+        private double updatedFraction = 0.1;
+        private double minLat = 38.0, maxLat = 40.0;
+        private double minLon = -78.0, maxLon = -76.0;
+        private double shapeRadiusDegrees = 0.05;
+        private final Map<String, Integer> typeWeights = new LinkedHashMap<>();
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Levels of groups below the root, and the children per group
+         */
+        public Builder groups(int depth, int fanout) {
+            this.depth = depth;
+            this.fanout = fanout;
+            return this;
+        }
+
+        public Builder markers(int markers) {
+            this.markers = markers;
+            return this;
+        }
+
+        public Builder shapes(int shapes, int minVertices, int maxVertices) {
+            this.shapes = shapes;
+            this.minVertices = minVertices;
+            this.maxVertices = maxVertices;
+            return this;
+        }
+
+        public Builder updatedFraction(double updatedFraction) {
+            this.updatedFraction = updatedFraction;
+            return this;
+        }
+
+        /**
+         * Add a marker type with a relative weight; replaces the default mix
+         */
+        public Builder markerType(String type, int weight) {
+            typeWeights.put(type, weight);
+            return this;
+        }
+
+        public SimulatedMap build() {
+            if (typeWeights.isEmpty()) {
+                markerType("a-f-G-U-C", 4);
+                markerType("a-h-G-U-C", 3);
+                markerType("a-n-G", 1);
+                markerType("a-u-G", 2);
+                markerType("b-m-p-s-p-loc", 1);
+                markerType("a-f-A-M-F", 1);
+            }
+            return new SimulatedMap(this);
+        }
+    }
+
+    private final Group root = new Group("root");
+    private final List<Group> allGroups = new ArrayList<>();
+    private final List<Item> markerItems = new ArrayList<>();
+
+    private int expectedTotal;
+    private int expectedUpdated;
+    private final int[] expectedAffiliations = new int[4];
+
+    private SimulatedMap(Builder builder) {
+        Random random = new Random(builder.seed);
+        buildGroups(builder.depth, builder.fanout);
+
+        String[] types = builder.typeWeights.keySet().toArray(new String[0]);
+        int[] cumulative = new int[types.length];
+        int totalWeight = 0;
+        for (int i = 0; i < types.length; i++) {
+            totalWeight += builder.typeWeights.get(types[i]);
+            cumulative[i] = totalWeight;
+        }
+
+        for (int i = 0; i < builder.markers; i++) {
+            int pick = random.nextInt(totalWeight);
+            int t = 0;
+            while (cumulative[t] <= pick) t++;
+
+            String type = types[t];
+            boolean updated = random.nextDouble() < builder.updatedFraction;
+            double lat = builder.minLat + random.nextDouble() * (builder.maxLat - builder.minLat);
+            double lon = builder.minLon + random.nextDouble() * (builder.maxLon - builder.minLon);
+            Item item = new Item("marker-" + i, type, true, updated, lat, lon, null);
+            randomGroup(random).items.add(item);
+            markerItems.add(item);
+            expect(type, updated);
+        }
+
+        for (int i = 0; i < builder.shapes; i++) {
+            int vertices = builder.minVertices
+                    + random.nextInt(builder.maxVertices - builder.minVertices + 1);
+            double centerLat = builder.minLat + random.nextDouble() * (builder.maxLat - builder.minLat);
+            double centerLon = builder.minLon + random.nextDouble() * (builder.maxLon - builder.minLon);
+            double[] coordinates = new double[vertices * 2];
+            for (int v = 0; v < vertices; v++) {
+                double angle = 2.0 * Math.PI * v / vertices;
+                double r = builder.shapeRadiusDegrees * (0.5 + random.nextDouble());
+                coordinates[v * 2] = centerLat + r * Math.sin(angle);
+                coordinates[v * 2 + 1] = centerLon + r * Math.cos(angle);
+            }
+            randomGroup(random).items.add(new Item("shape-" + i, "u-d-f", false, false,
+                    centerLat, centerLon, coordinates));
+        }
+    }
+
+    private void buildGroups(int depth, int fanout) {
+        allGroups.add(root);
+        List<Group> level = new ArrayList<>();
+        level.add(root);
+        for (int d = 0; d < depth; d++) {
+            List<Group> next = new ArrayList<>();
+            for (Group parent : level) {
+                for (int f = 0; f < fanout; f++) {
+                    Group child = new Group(parent.name + "/" + f);
+                    parent.children.add(child);
+                    next.add(child);
+                }
+            }
+            allGroups.addAll(next);
+            level = next;
+        }
+    }
+
+    private Group randomGroup(Random random) {
+        return allGroups.get(random.nextInt(allGroups.size()));
+    }
+
+    private void expect(String type, boolean updated) {
+        if (CotCounts.getCountableType(type) == null) return;
+
+        expectedTotal++;
+        if (updated) expectedUpdated++;
+        int index = "unfh".indexOf(type.charAt(2));
+        if (index >= 0) expectedAffiliations[index]++;
+    }
+
+    public Group getRoot() {
+        return root;
+    }
+
+    public int getGroupCount() {
+        return allGroups.size();
+    }
+
+    public List<Item> getMarkers() {
+        return markerItems;
+    }
+
+    public int getExpectedTotal() {
+        return expectedTotal;
+    }
+
+    public int getExpectedUpdated() {
+        return expectedUpdated;
+    }
+
+    /**
+     * Expected count for an affiliation character (u, n, f or h)
+     */
+    public int getExpectedAffiliation(char affiliation) {
+        return expectedAffiliations["unfh".indexOf(affiliation)];
+    }
+
+    @Override
+    public Collection<Group> getChildGroups(Group group) {
+        return group.children;
+    }
+
+    @Override
+    public Collection<Item> getItems(Group group) {
+        return group.items;
+    }
+
+    @Override
+    public String getUid(Item item) {
+        return item.uid;
+    }
+
+    @Override
+    public String getType(Item item) {
+        return item.type;
+    }
+
+    @Override
+    public boolean isMarker(Item item) {
+        return item.marker;
+    }
+
+    @Override
+    public boolean isShape(Item item) {
+        return item.coordinates != null;
+    }
+
+    @Override
+    public boolean isMarkedUpdated(Item item) {
+        return item.updated;
+    }
+
+    @Override
+    public double getLatitude(Item item) {
+        return item.lat;
+    }
+
+    @Override
+    public double getLongitude(Item item) {
+        return item.lon;
+    }
+
+    @Override
+    public double[] getShapeCoordinates(Item item) {
+        return item.coordinates;
+    }
+}
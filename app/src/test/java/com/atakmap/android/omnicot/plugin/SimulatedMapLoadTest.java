@@ -0,0 +1,69 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SimulatedMapLoadTest {
+
+    @Test
+    public void singleWalkOverHundredThousandItems() {
+        SimulatedMap map = new SimulatedMap.Builder()
+                .seed(2024L)
+                .groups(6, 4)
+                .markers(95000)
+                .shapes(5000, 4, 64)
+                .updatedFraction(0.2)
+                .build();
+
+        CotCounts statistics = new CotCounts();
+        AoiModelCollector<SimulatedMap.Item> aois = new AoiModelCollector<>(map);
+        MapModelTraversal.Report report = MapModelTraversal.walk(map, map.getRoot(),
+                Arrays.asList(statistics.visitorFor(map), aois));
+
+        assertEquals(100000, report.getItemCount());
+        assertEquals(map.getGroupCount(), report.getGroupCount());
+        assertEquals(2, report.getCollectorCount());
+        assertEquals(map.getExpectedTotal(), statistics.getTotalCot());
+        assertEquals(map.getExpectedUpdated(), statistics.getUpdatedCot());
+        assertEquals(map.getExpectedAffiliation('u'), statistics.getUnknownCount());
+        assertEquals(map.getExpectedAffiliation('n'), statistics.getNeutralCount());
+        assertEquals(map.getExpectedAffiliation('f'), statistics.getFriendlyCount());
+        assertEquals(map.getExpectedAffiliation('h'), statistics.getHostileCount());
+        assertEquals(5000, aois.size());
+
+        // Join a sample of markers against the AOIs and check against a linear scan
+        AoiSpatialIndex<String> index = aois.buildIndex();
+        List<String> found = new ArrayList<>();
+        List<SimulatedMap.Item> markers = map.getMarkers();
+        for (int i = 0; i < markers.size(); i += 95) {
+            SimulatedMap.Item marker = markers.get(i);
+            double lat = map.getLatitude(marker);
+            double lon = map.getLongitude(marker);
+
+            found.clear();
+            index.findContaining(lat, lon, found);
+            int expected = 0;
+            for (AoiGeometry geometry : aois.getGeometries()) {
+                if (geometry.contains(lat, lon)) expected++;
+            }
+            assertEquals(expected, found.size());
+        }
+    }
+
+    @Test
+    public void deepHierarchyDoesNotOverflowTheStack() {
+        SimulatedMap map = new SimulatedMap.Builder()
+                .groups(20000, 1)
+                .markers(1000)
+                .shapes(0, 4, 4)
+                .build();
+
+        CotCounts statistics = CotCounts.count(map, map.getRoot());
+        assertEquals(map.getExpectedTotal(), statistics.getTotalCot());
+    }
+}
@@ -0,0 +1,56 @@
+package com.atakmap.android.omnicot.plugin;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TraceTest {
+
+    @Test
+    public void disabledLevelsAreNotRecorded() {
+        int previous = Trace.getLevel();
+        try {
+            Trace.setLevel(Trace.INFO);
+            long before = Trace.getRecordedCount();
+            Trace.record(Trace.DEBUG, Trace.MENU_CREATED, 1);
+            assertEquals(before, Trace.getRecordedCount());
+
+            Trace.record(Trace.INFO, Trace.SPATIAL_INDEX_BUILT, 12, 3);
+            assertEquals(before + 1, Trace.getRecordedCount());
+            assertTrue(Trace.dump().contains("spatial index aois=12 depth=3"));
+        } finally {
+            Trace.setLevel(previous);
+        }
+    }
+
+    @Test
+    public void ringKeepsOnlyTheMostRecentEvents() {
+        int previous = Trace.getLevel();
+        try {
+            Trace.setLevel(Trace.DEBUG);
+            for (int i = 0; i < Trace.CAPACITY + 100; i++) {
+                Trace.record(Trace.DEBUG, Trace.AOIS_REJOINED, i, 0);
+            }
+
+            String[] lines = Trace.dump().split("\n");
+            assertEquals(Trace.CAPACITY, lines.length);
+            assertTrue(lines[0].endsWith("markers=100 aois=0"));
+            assertTrue(lines[lines.length - 1].endsWith(
+                    "markers=" + (Trace.CAPACITY + 99) + " aois=0"));
+        } finally {
+            Trace.setLevel(previous);
+        }
+    }
+
+    @Test
+    public void maskedNegativeHashPrintsAsEightHexDigits() {
+        int previous = Trace.getLevel();
+        try {
+            Trace.setLevel(Trace.DEBUG);
+            Trace.record(Trace.DEBUG, Trace.MENU_CREATED, -2 & 0xffffffffL);
+            assertTrue(Trace.dump().endsWith("menu created uid_hash=fffffffe\n"));
+        } finally {
+            Trace.setLevel(previous);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.atakmap.android.omnicot.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type rewriting done by AffiliationUpdater.updateAffiliation for every
+ * marker in a batch, with the codec's cached variants against building a
+ * new string each time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AffiliationRewriteBenchmark {
+
+    private static final char[] TARGETS = {'f', 'h', 'n', 'u'};
+
+    @Param({"1000", "100000", "1000000"})
+    public int markerCount;
+
+    private String[] markerTypes;
+
+    @Setup
+    public void setup() {
+        markerTypes = SyntheticData.markerTypes(markerCount, 7L);
+    }
+
+    @Benchmark
+    public void rewriteCached(Blackhole blackhole) {
+        for (int i = 0; i < markerTypes.length; i++) {
+            blackhole.consume(CotTypeCodec.describe(markerTypes[i])
+                    .withAffiliation(TARGETS[i & 3]));
+        }
+    }
+
+    @Benchmark
+    public void rewriteUncached(Blackhole blackhole) {
+        for (int i = 0; i < markerTypes.length; i++) {
+            String type = markerTypes[i];
+            if (type.length() < 3) continue;
+            char[] typeChars = type.toCharArray();
+            typeChars[2] = TARGETS[i & 3];
+            blackhole.consume(new String(typeChars));
+        }
+    }
+}
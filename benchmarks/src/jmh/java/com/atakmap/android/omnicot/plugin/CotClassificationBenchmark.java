@@ -0,0 +1,93 @@
+package com.atakmap.android.omnicot.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-marker classification done by CotStatistics.processMapItem and
+ * AoiManager.determineShapeType, with the cached codec against parsing
+ * every type from scratch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CotClassificationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int markerCount;
+
+    private String[] markerTypes;
+    private String[] shapeTypes;
+
+    @Setup
+    public void setup() {
+        markerTypes = SyntheticData.markerTypes(markerCount, 42L);
+        shapeTypes = SyntheticData.shapeTypes(Math.min(markerCount, 10000), 43L);
+    }
+
+    @Benchmark
+    public int[] countAffiliationsCached() {
+        int[] counts = new int[4];
+        for (String type : markerTypes) {
+            CotTypeCodec.Descriptor descriptor = CotTypeCodec.describe(type);
+            if (!descriptor.isValid() || descriptor.isNonCot()) continue;
+            count(counts, descriptor.getAffiliation());
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public int[] countAffiliationsUncached() {
+        int[] counts = new int[4];
+        for (String type : markerTypes) {
+            if (type.length() < 3 || CotTypeCodec.isNonCotType(type)) continue;
+            count(counts, type.charAt(2));
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public int shapeKindCached() {
+        int known = 0;
+        for (String type : shapeTypes) {
+            if (CotTypeCodec.describe(type).getShapeKind() != null) known++;
+        }
+        return known;
+    }
+
+    @Benchmark
+    public int shapeKindUncached() {
+        int known = 0;
+        for (String type : shapeTypes) {
+            if (CotTypeCodec.parseShapeKind(type) != null) known++;
+        }
+        return known;
+    }
+
+    private static void count(int[] counts, char affiliation) {
+        switch (affiliation) {
+            case 'u':
+                counts[0]++;
+                break;
+            case 'n':
+                counts[1]++;
+                break;
+            case 'f':
+                counts[2]++;
+                break;
+            case 'h':
+                counts[3]++;
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.atakmap.android.omnicot.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Area, perimeter and containment of a single AOI as the vertex count grows
+ * towards large freehand drawings
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeodesicAreaBenchmark {
+
+    @Param({"4", "1000", "100000"})
+    public int vertexCount;
+
+    private double[] lats;
+    private double[] lons;
+    private AoiGeometry geometry;
+
+    @Setup
+    public void setup() {
+        double[][] ring = SyntheticData.polygon(vertexCount, 38.9, -77.0, 0.5, 11L);
+        lats = ring[0];
+        lons = ring[1];
+        geometry = AoiGeometry.polygon("bench", lats, lons);
+    }
+
+    @Benchmark
+    public double polygonArea() {
+        return GeodesicArea.polygonArea(lats, lons);
+    }
+
+    @Benchmark
+    public double polygonPerimeter() {
+        return GeodesicArea.polygonPerimeter(lats, lons);
+    }
+
+    @Benchmark
+    public boolean containsCenter() {
+        return geometry.contains(38.9, -77.0);
+    }
+}
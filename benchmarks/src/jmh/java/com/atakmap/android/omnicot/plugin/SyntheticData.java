@@ -0,0 +1,68 @@
+package com.atakmap.android.omnicot.plugin;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks
+ */
+final class SyntheticData {
+
+    /**
+     * Mix of types seen on a busy map, weighted towards ground units
+     */
+    private static final String[] MARKER_TYPES = {
+            "a-f-G-U-C", "a-f-G-U-C-I", "a-f-G-E-V", "a-f-A-M-F",
+            "a-h-G-U-C", "a-h-G-E-V-A", "a-h-A-M-F-Q", "a-h-S",
+            "a-n-G", "a-n-A-C", "a-u-G", "a-u-A", "a-u-S",
+            "a-f-G-U-C", "a-h-G-U-C", "a-u-G",
+            // Items the statistics must skip
+            "u-d-r", "u-d-c-c", "u-d-f", "b-m-p-s-p-loc", "u-rb-a",
+            "a-f-G-U-C-drawing", "b-m-p-w"
+    };
+
+    private static final String[] SHAPE_TYPES = {
+            "u-d-r", "u-d-c-c", "u-d-f", "u-d-p", "shape_polygon", "u-d-f-m"
+    };
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Marker types, each a distinct String instance as if parsed from CoT
+     */
+    static String[] markerTypes(int count, long seed) {
+        Random random = new Random(seed);
+        String[] types = new String[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = new String(MARKER_TYPES[random.nextInt(MARKER_TYPES.length)]);
+        }
+        return types;
+    }
+
+    static String[] shapeTypes(int count, long seed) {
+        Random random = new Random(seed);
+        String[] types = new String[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = new String(SHAPE_TYPES[random.nextInt(SHAPE_TYPES.length)]);
+        }
+        return types;
+    }
+
+    /**
+     * Freehand-style ring around a center with a jittered radius
+     * @return {lats, lons}
+     */
+    static double[][] polygon(int vertices, double centerLat, double centerLon,
+                              double radiusDegrees, long seed) {
+        Random random = new Random(seed);
+        double[] lats = new double[vertices];
+        double[] lons = new double[vertices];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2.0 * Math.PI * i / vertices;
+            double r = radiusDegrees * (0.8 + 0.4 * random.nextDouble());
+            lats[i] = centerLat + r * Math.sin(angle);
+            lons[i] = centerLon + r * Math.cos(angle);
+        }
+        return new double[][] {lats, lons};
+    }
+}